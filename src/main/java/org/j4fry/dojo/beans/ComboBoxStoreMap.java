@@ -25,22 +25,50 @@ import java.util.Map;
 import jakarta.faces.context.FacesContext;
 import jakarta.faces.el.ValueBinding;
 
+import org.j4fry.dojo.converter.StorePayloadCache;
 import org.j4fry.json.JSONObject;
 
 /**
 * Create a JSON store from a server side list with the params List list, String var, String key
+* A cached ComboBoxStoreMap takes the params String cacheKey, String cacheVersion first and
+* shares the JSON store between all sessions until the cacheVersion changes.
 * @see DojoHelper#getComboBoxStore()
+* @see DojoHelper#getCachedComboBoxStore()
 */
 public class ComboBoxStoreMap extends MapAdapter {
 	
 	private List<Object> list;
 	private String var;
 	private String key;
+	private String cacheKey;
+	private String cacheVersion;
 	private boolean setList;
 	private boolean setVar;
+	private boolean setCacheKey;
+	private boolean setCacheVersion;
+
+	public ComboBoxStoreMap() {
+		this(false);
+	}
+
+	/**
+	 * @param cached Whether the map takes cacheKey and cacheVersion as first params
+	 */
+	public ComboBoxStoreMap(boolean cached) {
+		setCacheKey = !cached;
+		setCacheVersion = !cached;
+	}
 
 	public Object get(Object o) {
-		if (!setList) {
+		if (!setCacheKey) {
+			cacheKey = (String) o;
+			setCacheKey = true;
+			return this;
+		} else if (!setCacheVersion) {
+			cacheVersion = o == null ? null : String.valueOf(o);
+			setCacheVersion = true;
+			return this;
+		} else if (!setList) {
 			if (o instanceof List) {
 				list = (List<Object>) o;
 			}
@@ -53,28 +81,41 @@ public class ComboBoxStoreMap extends MapAdapter {
 		} else {
 			key = (String) o;
 			FacesContext context = FacesContext.getCurrentInstance();
-			ValueBinding itemVb = context.getApplication().createValueBinding("#{" + var + "}");
-			ValueBinding keyVb = context.getApplication().createValueBinding(
-					"dojofaces_key_undefined".equals(key) ? "#{" + var + "}" : key);
-			
-			StringBuffer result = new StringBuffer();
-			result.append("[");
-			boolean start = true;
-			if (list != null) {
-				for (Object item : list) {
-					itemVb.setValue(context, item);
-					if (start) {
-						start = false;  
-					} else {
-						result.append(",");
-					}
-					Map<String, Object> jsonContent = new HashMap<String, Object>();
-					jsonContent.put("name", keyVb.getValue(context));
-					result.append(new JSONObject(jsonContent).toString());
+			if (cacheKey == null || cacheKey.length() == 0) {
+				return createStore(context);
+			}
+			String payloadKey = ComboBoxStoreMap.class.getName() + '\n' + cacheKey + '\n' + var + '\n' + key;
+			String result = StorePayloadCache.get(context, payloadKey, cacheVersion);
+			if (result == null) {
+				result = createStore(context);
+				StorePayloadCache.put(context, payloadKey, cacheVersion, result);
+			}
+			return result;
+		}
+	}
+
+	private String createStore(FacesContext context) {
+		ValueBinding itemVb = context.getApplication().createValueBinding("#{" + var + "}");
+		ValueBinding keyVb = context.getApplication().createValueBinding(
+				"dojofaces_key_undefined".equals(key) ? "#{" + var + "}" : key);
+		
+		StringBuffer result = new StringBuffer();
+		result.append("[");
+		boolean start = true;
+		if (list != null) {
+			for (Object item : list) {
+				itemVb.setValue(context, item);
+				if (start) {
+					start = false;  
+				} else {
+					result.append(",");
 				}
+				Map<String, Object> jsonContent = new HashMap<String, Object>();
+				jsonContent.put("name", keyVb.getValue(context));
+				result.append(new JSONObject(jsonContent).toString());
 			}
-			result.append("]");
-			return result.toString();
 		}
+		result.append("]");
+		return result.toString();
 	}
 }
\ No newline at end of file
@@ -99,6 +99,14 @@ public class DojoHelper {
 		return new JsIdMap(binding);
 	}
 
+	/**
+	 * determine the URL a store with paging="true" loads its slices from
+	 * @return {@link PagingUrlMap}
+	 */
+	public PagingUrlMap getPagingUrl() {
+		return new PagingUrlMap(binding);
+	}
+
 	/**
 	 * determine the id of the enclosing form of a JSF component 
 	 * that is identified by the key of the binding 
@@ -154,6 +162,16 @@ public class DojoHelper {
 		return new ComboBoxStoreMap();
 	}
 	
+	/**
+	 * The Map is to create a JSON store from a server side list that is shared 
+	 * by all sessions until the cacheVersion changes. It takes cacheKey and cacheVersion
+	 * as additional first params.
+	 * @return {@link ComboBoxStoreMap}
+	 */
+	public ComboBoxStoreMap getCachedComboBoxStore() {
+		return new ComboBoxStoreMap(true);
+	}
+	
 	/**
 	 * returns an empty HashMap in cases where returning a null value is to be avoided 
 	 * @return {@link Map}
@@ -18,16 +18,14 @@
  */
 package org.j4fry.dojo.beans;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import jakarta.faces.application.FacesMessage;
 import jakarta.faces.component.UIComponent;
 import jakarta.faces.context.FacesContext;
 import jakarta.faces.el.ValueBinding;
 
-import org.j4fry.dojo.converter.StoreUpdateConverter;
+import org.j4fry.dojo.converter.StorePlan;
 
 public class GridEventMap extends MapAdapter {
 
@@ -61,12 +59,11 @@ public class GridEventMap extends MapAdapter {
 			FacesContext context = FacesContext.getCurrentInstance();
 	
 			UIComponent storeHidden = context.getViewRoot().findComponent(DojoHelper.get().getClientId().get(gridId+"_store"));
-			// tokenize structure
-			Map<String, String> valueBindingStrings = new HashMap<String, String>();
-			Map<String, String> childrenStrings = new HashMap<String, String>();
+			// compiled structure
+			StorePlan plan;
 			try {
-				StoreUpdateConverter.tokenizeStructure((String) storeHidden.getAttributes().get("structure"), context, 
-						valueBindingStrings, childrenStrings, null, null, null);
+				plan = StorePlan.get(context, (String) storeHidden.getAttributes().get("structure"), 
+						(String) storeHidden.getAttributes().get("key"));
 			} catch (Throwable t) {
 				context.addMessage(null, new FacesMessage(t.getMessage()));
 				return null;
@@ -80,7 +77,10 @@ public class GridEventMap extends MapAdapter {
 				List list = (List) storeHidden.getAttributes().get("items");
 				if(list != null) {
 					ValueBinding vbItem = context.getApplication().createValueBinding("#{" + storeHidden.getAttributes().get("var") + "}");
-					ValueBinding vbKey = context.getApplication().createValueBinding(valueBindingStrings.get(storeHidden.getAttributes().get("key")));
+					StorePlan.Column keyColumn = plan.getKeyColumn();
+					if (keyColumn == null) 
+						throw new IllegalArgumentException("The key " + storeHidden.getAttributes().get("key") + " is not defined in the structure");
+					ValueBinding vbKey = keyColumn.getValueBinding();
 					boolean valueSet = false;
 					for(Object o : list) {
 						vbItem.setValue(context, o);
@@ -93,7 +93,7 @@ public class GridEventMap extends MapAdapter {
 					}
 					if(!valueSet)
 						throw new IllegalArgumentException("Cannot set value " + keyValue +
-							" into expression " + valueExpression + "(" + valueBindingStrings.get(storeHidden.getAttributes().get("key")) + ")");
+							" into expression " + valueExpression + "(" + keyColumn.getExpression() + ")");
 					vbItem.setValue(context, null);
 				}
 			}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.beans;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Map;
+
+import jakarta.faces.component.UIComponent;
+import jakarta.faces.context.FacesContext;
+
+import org.j4fry.dojo.converter.PagedStore;
+
+/**
+* This Map is returned by {@link DojoHelper#getPagingUrl()}
+* to determine the URL a paged store's slices are fetched from.
+* @see org.j4fry.dojo.listener.StorePagingListener
+*/
+public class PagingUrlMap extends MapAdapter {
+	private Map<String, UIComponent> bindings;
+
+	public PagingUrlMap(Map<String, UIComponent> bindings) {
+		this.bindings = bindings;
+	}
+
+	public String get(Object id) {
+		UIComponent comp = ((UIComponent) bindings.get(id));
+		if (comp == null) return null;
+		FacesContext context = FacesContext.getCurrentInstance();
+		String viewId = context.getViewRoot().getViewId();
+		String url = context.getApplication().getViewHandler().getActionURL(context, viewId);
+		try {
+			url += (url.indexOf('?') < 0 ? "?" : "&") 
+				+ PagedStore.STORE_PARAM + "=" + URLEncoder.encode(comp.getClientId(context), "UTF-8")
+				+ "&" + PagedStore.VIEW_PARAM + "=" + URLEncoder.encode(viewId, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		return context.getExternalContext().encodeActionURL(url);
+	}
+}
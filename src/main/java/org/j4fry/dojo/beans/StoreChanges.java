@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.beans;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.j4fry.dojo.converter.StoreCommand;
+
+/**
+ * All changes of a store that were applied by one submit, passed to the onBatch
+ * method binding of {@link StoreUpdateMap}. The method binding is invoked once
+ * after the changes were applied to the model, so the application can write them
+ * to its backend in one transaction, e.g. with JDBC batches:
+ * <pre>public void saveGrid(StoreChanges changes) {
+ *     for (StoreChanges.Change insert : changes.getInserts()) ...
+ * }</pre>
+ */
+public class StoreChanges {
+
+	private final List<Change> inserts = new ArrayList<Change>();
+	private final List<Change> updates = new ArrayList<Change>();
+	private final List<Change> deletes = new ArrayList<Change>();
+
+	void addInsert(Object item, StoreCommand.Insert command) {
+		inserts.add(new Change(null, item, command.getItem()));
+	}
+
+	void addUpdate(String key, Object item, StoreCommand.Set command) {
+		updates.add(new Change(key, item, command.getItem()));
+	}
+
+	void addDelete(String key, Object item) {
+		deletes.add(new Change(key, item, null));
+	}
+
+	/**
+	 * @return The inserted items in the order they were inserted
+	 */
+	public List<Change> getInserts() {
+		return Collections.unmodifiableList(inserts);
+	}
+
+	/**
+	 * @return The changed items, an item that was changed several times occurs several times
+	 */
+	public List<Change> getUpdates() {
+		return Collections.unmodifiableList(updates);
+	}
+
+	/**
+	 * @return The deleted items
+	 */
+	public List<Change> getDeletes() {
+		return Collections.unmodifiableList(deletes);
+	}
+
+	public boolean isEmpty() {
+		return inserts.isEmpty() && updates.isEmpty() && deletes.isEmpty();
+	}
+
+	/**
+	 * A single insert, update or delete
+	 */
+	public static class Change {
+
+		private final String key;
+		private final Object item;
+		private final StoreCommand.Item attributes;
+
+		private Change(String key, Object item, StoreCommand.Item attributes) {
+			this.key = key;
+			this.item = item;
+			this.attributes = attributes;
+		}
+
+		/**
+		 * @return The key of the changed or deleted item, null for inserts
+		 */
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return The model item. For inserts it is the new item or null if neither
+		 * onInsert nor modelClass created one. For updates it is the item after the
+		 * change unless autoUpdate is false. Deleted items are already removed from
+		 * the list unless autoDelete is false.
+		 */
+		public Object getItem() {
+			return item;
+		}
+
+		/**
+		 * @return The converted attributes as sent by the store, null for deletes
+		 */
+		public StoreCommand.Item getAttributes() {
+			return attributes;
+		}
+	}
+}
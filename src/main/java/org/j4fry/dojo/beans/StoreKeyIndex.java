@@ -0,0 +1,220 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.beans;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.el.ValueBinding;
+
+import org.j4fry.dojo.converter.StorePlan;
+
+/**
+ * Index of the items of a store by their key, used by {@link StoreUpdateMap} to apply
+ * the changes of a store. The index is built with a single walk through the items
+ * including the children of hierarchical stores. Every entry knows the item, the
+ * collection that holds it and its position within the collection, so an item can
+ * be found and replaced without scanning the list.
+ *
+ * Deletes are collected and executed by {@link #compact()} in a single pass per
+ * collection, so positions stay valid while the changes are applied.
+ */
+class StoreKeyIndex {
+
+	private final FacesContext context;
+	private final StorePlan plan;
+	private final StorePlan.Column keyColumn;
+	private final ValueBinding itemVb;
+	private final String var;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private final Map<Collection, Set<Object>> deletes = new IdentityHashMap<Collection, Set<Object>>();
+	private final Set<Object> deleted = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+	/**
+	 * @param context The FacesContext
+	 * @param plan The compiled structure of the store including its key column
+	 * @param itemVb The valueBinding defined by "var"
+	 * @param var The name of the variable that holds the item
+	 * @param list The items
+	 */
+	StoreKeyIndex(FacesContext context, StorePlan plan, ValueBinding itemVb, String var, Collection list) {
+		this.context = context;
+		this.plan = plan;
+		this.keyColumn = plan.getKeyColumn();
+		this.itemVb = itemVb;
+		this.var = var;
+		add(list);
+	}
+
+	/**
+	 * Index all items of a collection and their children, the first item wins if keys are not unique
+	 */
+	private void add(Collection list) {
+		if (list == null) return;
+		int index = 0;
+		for (Object item : list) {
+			add(item, list, index++);
+		}
+	}
+
+	/**
+	 * Index an item and its children
+	 *
+	 * @param item The item
+	 * @param parent The collection that holds the item
+	 * @param index The position of the item within parent
+	 */
+	void add(Object item, Collection parent, int index) {
+		if (deleted.contains(item)) return;
+		itemVb.setValue(context, item);
+		if (keyColumn != null) {
+			String key = String.valueOf(keyColumn.getValue(context, var, item));
+			if (!entries.containsKey(key)) {
+				entries.put(key, new Entry(item, parent, index));
+			}
+		}
+		addChildren(item);
+	}
+
+	/**
+	 * Index the children of an item, e.g. after they were replaced.
+	 * Items that are marked for deletion are not indexed again.
+	 *
+	 * @param item The item
+	 */
+	void addChildren(Object item) {
+		itemVb.setValue(context, item);
+		for (StorePlan.Column children : plan.getChildren()) {
+			Object childList = children.getValue(context, var, item);
+			if (childList instanceof Collection) {
+				add((Collection) childList);
+				itemVb.setValue(context, item);
+			}
+		}
+	}
+
+	/**
+	 * Remove the children of an item and their descendants from the index,
+	 * before the children are replaced
+	 *
+	 * @param item The item
+	 */
+	void removeChildren(Object item) {
+		itemVb.setValue(context, item);
+		for (StorePlan.Column children : plan.getChildren()) {
+			Object childList = children.getValue(context, var, item);
+			if (childList instanceof Collection) {
+				for (Object child : (Collection) childList) {
+					remove(child);
+				}
+				itemVb.setValue(context, item);
+			}
+		}
+	}
+
+	/**
+	 * Remove an item and its descendants from the index, an entry of another item with the same key is kept
+	 */
+	private void remove(Object item) {
+		itemVb.setValue(context, item);
+		if (keyColumn != null) {
+			String key = String.valueOf(keyColumn.getValue(context, var, item));
+			Entry entry = entries.get(key);
+			if (entry != null && entry.item == item) {
+				entries.remove(key);
+			}
+		}
+		removeChildren(item);
+	}
+
+	/**
+	 * @param key The key as sent by the store
+	 * @return The item or null if there is no item with this key
+	 */
+	Object get(String key) {
+		Entry entry = entries.get(key);
+		return entry == null ? null : entry.item;
+	}
+
+	/**
+	 * Replace an item within its collection
+	 *
+	 * @param key The key of the item
+	 * @param item The new item
+	 */
+	void replace(String key, Object item) {
+		Entry entry = entries.get(key);
+		if (entry == null) return;
+		if (entry.item != item && entry.parent instanceof List) {
+			((List) entry.parent).set(entry.index, item);
+		}
+		entry.item = item;
+	}
+
+	/**
+	 * Remove an item from the index and mark it for deletion from its collection
+	 *
+	 * @param key The key of the item
+	 */
+	void delete(String key) {
+		Entry entry = entries.remove(key);
+		if (entry == null) return;
+		Set<Object> items = deletes.get(entry.parent);
+		if (items == null) {
+			items = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+			deletes.put(entry.parent, items);
+		}
+		items.add(entry.item);
+		deleted.add(entry.item);
+	}
+
+	/**
+	 * Remove all items that were marked for deletion, each collection is compacted once
+	 */
+	void compact() {
+		for (Map.Entry<Collection, Set<Object>> delete : deletes.entrySet()) {
+			final Set<Object> items = delete.getValue();
+			// ArrayList removes all matching items in a single pass
+			delete.getKey().removeIf(new Predicate<Object>() {
+				public boolean test(Object item) {
+					return items.contains(item);
+				}
+			});
+		}
+		deletes.clear();
+		deleted.clear();
+	}
+
+	private static class Entry {
+
+		private Object item;
+		private final Collection parent;
+		private final int index;
+
+		private Entry(Object item, Collection parent, int index) {
+			this.item = item;
+			this.parent = parent;
+			this.index = index;
+		}
+	}
+}
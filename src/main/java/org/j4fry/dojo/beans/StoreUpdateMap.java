@@ -21,10 +21,7 @@ package org.j4fry.dojo.beans;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 import jakarta.faces.application.FacesMessage;
 import jakarta.faces.context.FacesContext;
@@ -32,14 +29,15 @@ import jakarta.faces.el.EvaluationException;
 import jakarta.faces.el.PropertyNotFoundException;
 import jakarta.faces.el.ValueBinding;
 
-import org.j4fry.dojo.converter.StoreUpdateConverter;
-import org.j4fry.json.JSONArray;
-import org.j4fry.json.JSONException;
+import org.j4fry.dojo.converter.ModelClass;
+import org.j4fry.dojo.converter.StoreCommand;
+import org.j4fry.dojo.converter.StoreCommands;
+import org.j4fry.dojo.converter.StorePlan;
 import org.j4fry.json.JSONObject;
 
 /**
 * Apply the changes that come from a dataStore via 
-* {@link org.j4fry.dojo.converter.StoreUpdateConverter} through a JSONObject 
+* {@link org.j4fry.dojo.converter.StoreUpdateConverter} as {@link StoreCommands} 
 * to the server model. 
 * 
 * Items inserted into the dataStore are only inserted into the model if either
@@ -55,6 +53,10 @@ import org.j4fry.json.JSONObject;
 * behaviour is not requested set autoDelete to false. Pre delete validation and 
 * specialized delete logic can be achieved with the onDelete method binding.
 * 
+* The onBatch method binding receives all changes of a submit at once as
+* {@link StoreChanges}. It is invoked after the changes were applied to the model,
+* so the application can write them to its backend in a single transaction.
+* 
 * @see DojoHelper#getDataGridContent()
 */
 public class StoreUpdateMap extends StoreMap {
@@ -68,6 +70,7 @@ public class StoreUpdateMap extends StoreMap {
 	private String modelClass;
 	private String autoUpdate;
 	private String autoDelete;
+	private String onBatch;
 	private boolean setList;
 	private boolean setVar;
 	private boolean setKey;
@@ -77,6 +80,7 @@ public class StoreUpdateMap extends StoreMap {
 	private boolean setModelClass;
 	private boolean setAutoUpdate;
 	private boolean setAutoDelete;
+	private boolean setOnBatch;
 
 	/**
 	 * set params through EL Map syntax
@@ -120,6 +124,10 @@ public class StoreUpdateMap extends StoreMap {
 			autoDelete = (String) o;
 			setAutoDelete = true;
 			return this;
+		} else if(!setOnBatch) {
+			onBatch = (String) o;
+			setOnBatch = true;
+			return this;
 		} else {
 			return null;
 		}
@@ -129,79 +137,88 @@ public class StoreUpdateMap extends StoreMap {
 	 * do the actual model update
 	 */
 	public Object put (Object structure, Object updates) {
-		if (updates == null || !(updates instanceof JSONArray)) return null;
+		if (!(updates instanceof StoreCommands)) return null;
 		FacesContext context = FacesContext.getCurrentInstance();
 		try {
 			String structureString = ((String) structure).replace("__dojoFacelets_emtpyKey__", "#{" + var + "}");
 			
-			// tokenize structure
-			Map<String, String> valueBindingStrings = new HashMap<String, String>();
-			Map<String, String> childrenStrings = new HashMap<String, String>();
-	    	StoreUpdateConverter.tokenizeStructure(structureString, context, valueBindingStrings, childrenStrings, null, null, null);
-
-	    	// cache valueBindings once they are created
-	    	Map<String, ValueBinding> valueBindings = new HashMap<String, ValueBinding>();
-			Map<String, ValueBinding> children = new HashMap<String, ValueBinding>();
+			// compiled structure
+			StorePlan plan = StorePlan.get(context, structureString, key);
 
 			ValueBinding itemVb = context.getApplication().createValueBinding("#{" + var + "}");
-			for(int i = 0; i < ((JSONArray)updates).length(); i++) {
-				JSONObject update = (JSONObject) ((JSONArray)updates).get(i);
-				
-				// process insert
-				JSONObject insertObject = (JSONObject) update.opt("insert");
-				if (insertObject != null) {
+			// the key index is built when the first set or delete needs it
+			StoreKeyIndex index = null;
+			StoreChanges changes = isSetOnBatch() ? new StoreChanges() : null;
+			for (StoreCommand command : (StoreCommands) updates) {
+				if (command instanceof StoreCommand.Insert) {
+					// process insert
+					StoreCommand.Item insertItem = ((StoreCommand.Insert) command).getItem();
 					Object newItem = null;
 					if (isSetOnInsert()) {
 						// invoke insert callback
-						newItem = MethodInvokator.getInstance(onInsert, context).invoke(insertObject);
+						newItem = MethodInvokator.getInstance(onInsert, context).invoke(insertItem.toJSONObject());
 					}
 					if (isSetModelClass()) {
 						// construct new item
-						newItem = setItem(context, insertObject, valueBindingStrings, valueBindings, childrenStrings, children, 
-								Class.forName(modelClass), itemVb, Class.forName(modelClass).getConstructor().newInstance());
+						ModelClass model = ModelClass.forName(context, modelClass);
+						newItem = setItem(context, insertItem, plan, model, itemVb, model.newInstance());
 					}
 					if (list == null) throw new IllegalArgumentException("Please set the target list before dropping items on it.");
-					if (newItem != null) list.add(newItem);
-				}
-				
-				// process set
-				JSONObject updateObject = (JSONObject) update.opt("set");
-				if (updateObject != null) {
-					for (Iterator updateIt = ((JSONObject) update.opt("set")).keys(); updateIt.hasNext(); ) {
-						String updateKey = (String) updateIt.next();
-						JSONObject updateAttributes = (JSONObject) ((JSONObject) update.opt("set")).get(updateKey);
-						Object oldItem = getItem(context, updateKey, itemVb, valueBindingStrings, valueBindings, childrenStrings, children, list); 
-						if(isSetOnUpdate()) {
-							// invoke set callback
-							MethodInvokator.getInstance(onUpdate, context).invoke(oldItem, updateAttributes);
-						}
-						if (!isSetAutoUpdate() || ("true".equalsIgnoreCase(autoUpdate))) {
-							// change item
-							int index = list.indexOf(oldItem);
-							Object o = setItem(context, updateAttributes, valueBindingStrings, valueBindings, childrenStrings, children,  
-									modelClass == null || modelClass.length() == 0 ? oldItem.getClass() : Class.forName(modelClass), 
-											itemVb, oldItem);
-							if (index != -1) {
-								list.set(index, o);
+					if (newItem != null) {
+						list.add(newItem);
+						if (index != null) index.add(newItem, list, list.size() - 1);
+					}
+					if (changes != null) changes.addInsert(newItem, (StoreCommand.Insert) command);
+				} else if (command instanceof StoreCommand.Set) {
+					// process set
+					String updateKey = ((StoreCommand.Set) command).getKey();
+					StoreCommand.Item updateAttributes = ((StoreCommand.Set) command).getItem();
+					if (index == null) index = new StoreKeyIndex(context, plan, itemVb, var, list);
+					Object oldItem = index.get(updateKey);
+					if(isSetOnUpdate()) {
+						// invoke set callback
+						MethodInvokator.getInstance(onUpdate, context).invoke(oldItem, updateAttributes.toJSONObject());
+					}
+					if (!isSetAutoUpdate() || ("true".equalsIgnoreCase(autoUpdate))) {
+						boolean newChildren = false;
+						for (StorePlan.Column children : plan.getChildren()) {
+							if (updateAttributes.has(children.getName())) {
+								newChildren = true;
+								break;
 							}
 						}
+						// the item gets new children, only its subtree is indexed again
+						if (newChildren && oldItem != null) index.removeChildren(oldItem);
+						// change item
+						Object o = setItem(context, updateAttributes, plan, 
+								isSetModelClass() ? ModelClass.forName(context, modelClass) : ModelClass.get(oldItem.getClass()), 
+										itemVb, oldItem);
+						index.replace(updateKey, o);
+						if (newChildren) index.addChildren(o);
+						oldItem = o;
 					}
-				}
-				
-				// process delete
-				String deleteKey = (String) update.opt("delete"); 
-				if (deleteKey != null) {
-					Object deletedItem = getItem(context, deleteKey, itemVb, valueBindingStrings, valueBindings, childrenStrings, children, list);
+					if (changes != null) changes.addUpdate(updateKey, oldItem, (StoreCommand.Set) command);
+				} else if (command instanceof StoreCommand.Delete) {
+					// process delete
+					String deleteKey = ((StoreCommand.Delete) command).getKey(); 
+					if (index == null) index = new StoreKeyIndex(context, plan, itemVb, var, list);
+					Object deletedItem = index.get(deleteKey);
 					if (isSetOnDelete()) {
 						// invoke delete callback
 						MethodInvokator.getInstance(onDelete, context).invoke(deletedItem);
 					}
 					if (!isSetAutoDelete() || ("true".equalsIgnoreCase(autoDelete))) {
-						// delete item
-						list.remove(deletedItem);
+						// mark the item for deletion, all deletes are done in one pass at the end
+						index.delete(deleteKey);
 					}
+					if (changes != null) changes.addDelete(deleteKey, deletedItem);
 				}
 			}
+			if (index != null) index.compact();
+			if (changes != null && !changes.isEmpty()) {
+				// invoke batch callback once with all changes
+				MethodInvokator.getInstance(onBatch, context).invoke(changes);
+			}
 			return updates;
 		} catch (Throwable t) {
 			context.addMessage(null, new FacesMessage(t.getMessage()));
@@ -209,84 +226,43 @@ public class StoreUpdateMap extends StoreMap {
 		}
 	}
 			
-	private Object getItem(FacesContext ctx, String updateKey, ValueBinding itemVb, Map<String, String> vbStrings, 
-			Map<String, ValueBinding> vbMap, Map<String, String> childrenStrings, Map<String, ValueBinding> children, Collection list) 
-			throws PropertyNotFoundException, EvaluationException, JSONException {
-		if (list != null) {
-			for(Object item : list) {
-				itemVb.setValue(ctx, item);
-				
-				// check if item corresponds to key 
-				if (vbStrings.get(key) != null) {
-					if (vbMap.get(key) == null) {
-						vbMap.put(key, ctx.getApplication().createValueBinding(vbStrings.get(key)));
-					}
-					if (updateKey.equals(String.valueOf(vbMap.get(key).getValue(ctx)))) {
-						return item;
-					}
-				}
-				
-				// recurse to check children
-				for (Iterator<String> childrenIt = childrenStrings.keySet().iterator(); childrenIt.hasNext(); ) {
-					String childrenAttr = childrenIt.next();
-					if (children.get(childrenAttr) == null) {
-						children.put(childrenAttr, ctx.getApplication().createValueBinding(childrenStrings.get(childrenAttr)));
-					}
-					Object result = getItem(ctx, updateKey, itemVb, vbStrings, vbMap, childrenStrings, children, 
-							(Collection) children.get(childrenAttr).getValue(ctx));
-					if (result != null) return result;
-				}
-			}
-		}
-		return null;
-	}
-	
-	private Object setItem(FacesContext context, JSONObject updateAttributes, Map<String, String> vbStrings, 
-			Map<String, ValueBinding> vbMap, Map<String, String> childrenStrings, Map<String, ValueBinding> children, 
-			Class modelClass, ValueBinding itemVb, Object item) 
-		throws PropertyNotFoundException, EvaluationException, JSONException, IllegalArgumentException, SecurityException, 
+	private Object setItem(FacesContext context, StoreCommand.Item updateAttributes, StorePlan plan, 
+			ModelClass modelClass, ValueBinding itemVb, Object item) 
+		throws PropertyNotFoundException, EvaluationException, IllegalArgumentException, SecurityException, 
 		InstantiationException, IllegalAccessException, InvocationTargetException, NoSuchMethodException, ClassNotFoundException {
 		itemVb.setValue(context, item);
-		Iterator<String> attributeIt = updateAttributes.keys();
-		while (attributeIt.hasNext()) {
-			String attribute = attributeIt.next();
-			Object value = updateAttributes.opt(attribute);
-			if (childrenStrings.keySet().contains(attribute)) {
+		for (int a = 0; a < updateAttributes.size(); a++) {
+			String attribute = updateAttributes.getName(a);
+			Object value = updateAttributes.getValue(a);
+			StorePlan.Column column = plan.getColumn(attribute);
+			if (column == null) continue;
+			if (column.isChildren()) {
 				// need to recurse to set this attribute
-				if (children.get(attribute) == null) {
-					children.put(attribute, context.getApplication().createValueBinding(childrenStrings.get(attribute)));
-				}
-				if (value instanceof JSONArray) {
-					JSONArray json = (JSONArray) value;
+				if (value instanceof List) {
+					List children = (List) value;
 					Collection list = new ArrayList();
-					children.get(attribute).setValue(context, list);
-					for (int i = 0; i < json.length(); i++) {
-						list.add(setItem(context, (JSONObject) json.get(i), vbStrings, vbMap, childrenStrings, children, 
-								modelClass, itemVb, modelClass.getConstructor().newInstance()));
+					column.setValue(context, var, item, list);
+					for (int i = 0; i < children.size(); i++) {
+						list.add(setItem(context, (StoreCommand.Item) children.get(i), plan, 
+								modelClass, itemVb, modelClass.newInstance()));
 					}
+					itemVb.setValue(context, item);
 				} else {
-					children.get(attribute).setValue(context, null);
-				}
-			} else {
-				if (vbMap.get(attribute) == null) {
-					if (vbStrings.get(attribute) != null) {
-						vbMap.put(attribute, context.getApplication().createValueBinding(vbStrings.get(attribute)));
-					}
+					column.setValue(context, var, item, null);
 				}
-				if (vbMap.get(attribute) != null && !vbMap.get(attribute).isReadOnly(context)) {
-					if (itemVb.getExpressionString().equals(vbMap.get(attribute).getExpressionString())) {
-						item = value;
-					} else if (value instanceof JSONArray) {
-						// Leafs are encoded as one-element-arrays by dojo stores, so take only the first element to the model 
-						JSONArray json = (JSONArray) value;
-						if (json.length() == 0) {
-							vbMap.get(attribute).setValue(context, null);
-						} else {
-							vbMap.get(attribute).setValue(context, ((JSONArray) value).get(0));
-						}
+			} else if (!column.isReadOnly(context, var, item)) {
+				if (itemVb.getExpressionString().equals(column.getExpression())) {
+					item = value;
+				} else if (value instanceof List) {
+					// Leafs are encoded as one-element-arrays by dojo stores, so take only the first element to the model 
+					List json = (List) value;
+					if (json.size() == 0) {
+						column.setValue(context, var, item, null);
 					} else {
-						vbMap.get(attribute).setValue(context, value);
+						column.setValue(context, var, item, json.get(0));
 					}
+				} else {
+					column.setValue(context, var, item, value);
 				}
 			}
 		}
@@ -313,6 +289,10 @@ public class StoreUpdateMap extends StoreMap {
 		return autoDelete != null && !"".equals(autoDelete);
 	}
 	
+	private boolean isSetOnBatch() {
+		return onBatch != null && !"".equals(onBatch);
+	}
+	
 	private boolean isSetAutoUpdate() {
 		return autoUpdate != null && !"".equals(autoUpdate);
 	}
@@ -337,6 +317,11 @@ public class StoreUpdateMap extends StoreMap {
 			return ctx.getApplication().createMethodBinding(this.expression, new Class[] {JSONObject.class})
 				.invoke(ctx, new Object[] {parameter});
 		}
+		public Object invoke(StoreChanges parameter) {
+			if(expression == null) return null;
+			return ctx.getApplication().createMethodBinding(this.expression, new Class[] {StoreChanges.class})
+				.invoke(ctx, new Object[] {parameter});
+		}
 		public Object invoke(Object parameter) {
 			if(expression == null) return null;
 			return ctx.getApplication().createMethodBinding(this.expression, new Class[] {Object.class})
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.lang.invoke.MethodHandle;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.faces.context.FacesContext;
+
+/**
+ * The attributes of a converter or validator definition, resolved for a converter
+ * or validator class. The setters are taken from {@link ModelClass} and the attribute
+ * values are coerced to the setters' parameter types once, so configuring a new
+ * instance only invokes the setters. Attributes without a matching property are ignored.
+ *
+ * Instances are shared in an application wide {@link LruCache} keyed by class and attributes.
+ */
+public final class AttributeSetup {
+
+	private static final String CACHE_KEY = AttributeSetup.class.getName();
+
+	private final Class type;
+	private final String[] names;
+	private final MethodHandle[] setters;
+	private final Object[] arguments;
+
+	private AttributeSetup(Class type, Map<String, ?> attributes) {
+		this.type = type;
+		ModelClass modelClass = ModelClass.get(type);
+		List<String> myNames = new ArrayList<String>();
+		List<MethodHandle> mySetters = new ArrayList<MethodHandle>();
+		List<Object> myArguments = new ArrayList<Object>();
+		for (Map.Entry<String, ?> attribute : attributes.entrySet()) {
+			String name = attribute.getKey();
+			Class paramType = modelClass.getPropertyType(name);
+			if (paramType == null) continue;
+			MethodHandle setter = modelClass.getSetter(name);
+			if (setter == null) {
+				throw new IllegalArgumentException("unable to find a setter for " + name + " of " + type.getName());
+			}
+			Object argument;
+			try {
+				argument = StoreConverterBase.coerceTo(paramType, attribute.getValue());
+			} catch (ParseException e) {
+				throw new IllegalArgumentException("ParseException coercing " + name + " for " + type.getName(), e);
+			}
+			if (argument == null && paramType.isPrimitive()) {
+				throw new IllegalArgumentException("cannot coerce " + attribute.getValue() + " to " + paramType.getName()
+						+ " for " + name + " of " + type.getName());
+			}
+			myNames.add(name);
+			mySetters.add(setter);
+			myArguments.add(argument);
+		}
+		this.names = myNames.toArray(new String[myNames.size()]);
+		this.setters = mySetters.toArray(new MethodHandle[mySetters.size()]);
+		this.arguments = myArguments.toArray();
+	}
+
+	/**
+	 * @param context The FacesContext
+	 * @param type The class of the converter or validator
+	 * @param attributes The attributes to set, the map must not be changed afterwards
+	 * @return The resolved attributes
+	 */
+	public static AttributeSetup get(FacesContext context, Class type, Map<String, ?> attributes) {
+		LruCache<List<Object>, AttributeSetup> cache = LruCache.getInstance(context, CACHE_KEY);
+		List<Object> key = Arrays.<Object>asList(type, attributes);
+		AttributeSetup setup = cache.get(key);
+		if (setup == null) {
+			setup = cache.putIfAbsent(key, new AttributeSetup(type, attributes));
+		}
+		return setup;
+	}
+
+	/**
+	 * @return The class the attributes were resolved for
+	 */
+	public Class getType() {
+		return type;
+	}
+
+	/**
+	 * Set the attributes on a new instance
+	 *
+	 * @param target An instance of {@link #getType()}
+	 */
+	public void apply(Object target) {
+		for (int i = 0; i < setters.length; i++) {
+			try {
+				setters[i].invoke(target, arguments[i]);
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("Exception invoking setter for " + names[i] + " for " + type.getName(), e);
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalArgumentException("Exception invoking setter for " + names[i] + " for " + type.getName(), t);
+			}
+		}
+	}
+}
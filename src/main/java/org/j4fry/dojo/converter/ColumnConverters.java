@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import jakarta.faces.component.UIComponent;
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.convert.Converter;
+
+/**
+ * Holds the converters of a {@link StorePlan}'s columns for a single conversion.
+ * Converters are created lazily by the column's {@link ConverterFactory} and
+ * reused for all items.
+ */
+public class ColumnConverters {
+
+	private final StorePlan plan;
+	private final Converter[] converters;
+	private final boolean[] resolved;
+	private final UIComponent[] labeled;
+	private final String var;
+	private final Object item;
+
+	public ColumnConverters(StorePlan plan) {
+		this(plan, null, null);
+	}
+
+	/**
+	 * @param plan The compiled structure
+	 * @param var The name of the variable that holds the item
+	 * @param item An item that is used to look up the types of columns without a converter id,
+	 * the item must be set into var
+	 */
+	public ColumnConverters(StorePlan plan, String var, Object item) {
+		this.plan = plan;
+		this.converters = new Converter[plan.getColumns().size()];
+		this.resolved = new boolean[converters.length];
+		this.labeled = new UIComponent[converters.length];
+		this.var = var;
+		this.item = item;
+	}
+
+	public StorePlan getPlan() {
+		return plan;
+	}
+
+	/**
+	 * @param context The FacesContext
+	 * @param column A column of the plan
+	 * @return The column's converter or null if there is none
+	 */
+	public Converter get(FacesContext context, StorePlan.Column column) {
+		int index = column.getIndex();
+		if (!resolved[index]) {
+			if (item == null) {
+				converters[index] = column.getConverterFactory().create(context, column.getValueBinding());
+			} else {
+				converters[index] = column.getConverterFactory().create(context, column.getType(context, var, item));
+			}
+			resolved[index] = true;
+		}
+		return converters[index];
+	}
+
+	/**
+	 * @param column A column of the plan
+	 * @return Whether the column's converter has been looked up already
+	 */
+	public boolean isResolved(StorePlan.Column column) {
+		return resolved[column.getIndex()];
+	}
+
+	/**
+	 * @param context The FacesContext
+	 * @param name The name of an attribute
+	 * @return The attribute's converter or null if the structure doesn't define the attribute
+	 * or the attribute has no converter
+	 */
+	public Converter get(FacesContext context, String name) {
+		StorePlan.Column column = plan.getColumn(name);
+		if (column == null || column.isChildren()) return null;
+		return get(context, column);
+	}
+
+	/**
+	 * @param component The hidden input that holds the store, the same for all calls
+	 * @param column A column of the plan
+	 * @return The component to pass to the column's converter, it answers the converter's label
+	 */
+	public UIComponent getComponent(UIComponent component, StorePlan.Column column) {
+		int index = column.getIndex();
+		UIComponent myComponent = labeled[index];
+		if (myComponent == null) {
+			myComponent = LabeledComponent.wrap(component, column.getConverterFactory().getLabel());
+			labeled[index] = myComponent;
+		}
+		return myComponent;
+	}
+}
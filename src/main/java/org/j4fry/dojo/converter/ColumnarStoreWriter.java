@@ -0,0 +1,232 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.faces.component.UIComponent;
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.el.ValueBinding;
+
+import org.j4fry.json.JSONException;
+import org.j4fry.json.JSONObject;
+
+/**
+ * Writes a store with format="columnar". The attribute names are written once and the
+ * values of each column are written as one array. String columns with few distinct
+ * values are written as dictionary of the distinct values and int codes into it:
+ * <pre>{"columns":["id","status"],"size":3,"values":[[1,2,3],[0,1,0]],"dictionaries":[null,["open","closed"]]}</pre>
+ * Left out attributes are written as null. The JavaScript of InnerStore.xhtml expands
+ * the columns into the items of the ItemFileWriteStore, the items are the same as the
+ * ones of the JSON array written by {@link StoreWriter}.
+ *
+ * Only flat stores are written columnar, hierarchical stores are written as JSON array.
+ * Every value is read and converted once. While the items are read, a column that
+ * qualifies for a dictionary only keeps the int codes of its values, the other columns
+ * keep their values as JSON text.
+ */
+public class ColumnarStoreWriter {
+
+	/**
+	 * A column gets a dictionary if each distinct value occurs this many times on average
+	 */
+	private static final int MIN_REPETITIONS = 4;
+
+	/**
+	 * The maximum size of a dictionary
+	 */
+	private static final int MAX_DICTIONARY = 1024;
+
+	/**
+	 * @param component The hidden input that holds the store
+	 * @return Whether the store is rendered with format="columnar"
+	 */
+	public static boolean isEnabled(UIComponent component) {
+		return "columnar".equals(component.getAttributes().get("format"));
+	}
+
+	/**
+	 * Write the store columnar if it qualifies
+	 *
+	 * @param plan The compiled structure of the store
+	 * @param context The FacesContext
+	 * @param component The hidden input that holds the store
+	 * @param itemVb The valueBinding defined by "var"
+	 * @param list The items
+	 * @param out The target of the JSON text
+	 * @return false if nothing was written because the store has to be written as JSON array
+	 * @throws IOException If out cannot be written
+	 * @throws JSONException If a value is a non-finite number
+	 */
+	public static boolean write(StorePlan plan, FacesContext context, UIComponent component, ValueBinding itemVb,
+			Collection list, Appendable out) throws IOException, JSONException {
+		if (!isEnabled(component) || !plan.getChildren().isEmpty()) {
+			return false;
+		}
+		List<StorePlan.Column> columns = plan.getAttributes();
+		StoreWriter writer = new StoreWriter(plan, context, component, itemVb);
+		ColumnBuffer[] buffers = new ColumnBuffer[columns.size()];
+		for (int c = 0; c < buffers.length; c++) {
+			buffers[c] = new ColumnBuffer(list.size());
+		}
+		// every value is read and converted exactly once
+		for (Object item : list) {
+			writer.bind(item);
+			for (int c = 0; c < buffers.length; c++) {
+				buffers[c].add(writer.getJsonValue(columns.get(c), item));
+			}
+		}
+		writer.bind(null);
+
+		out.append("{\"columns\":[");
+		for (int c = 0; c < columns.size(); c++) {
+			if (c > 0) out.append(',');
+			JSONObject.quote(columns.get(c).getName(), out);
+		}
+		out.append("],\"size\":");
+		out.append(String.valueOf(list.size()));
+		out.append(",\"values\":[");
+		for (int c = 0; c < buffers.length; c++) {
+			if (c > 0) out.append(',');
+			buffers[c].finish();
+			buffers[c].writeValues(out);
+		}
+		out.append("],\"dictionaries\":[");
+		for (int c = 0; c < buffers.length; c++) {
+			if (c > 0) out.append(',');
+			buffers[c].writeDictionary(out);
+		}
+		out.append("]}");
+		return true;
+	}
+
+	/**
+	 * The values of a single column. As long as the column qualifies for a dictionary
+	 * only the codes of its values are kept, otherwise the values are kept as JSON text.
+	 */
+	private static class ColumnBuffer {
+
+		private Map<String, Integer> codes = new HashMap<String, Integer>();
+		private List<String> dictionary = new ArrayList<String>();
+		private int[] rows;
+		private int size;
+		private int count;
+		private StringBuilder text;
+
+		private ColumnBuffer(int capacity) {
+			rows = new int[capacity];
+		}
+
+		/**
+		 * @param value The value of the next row as written to the JSON text or null
+		 */
+		private void add(Object value) throws IOException, JSONException {
+			if (rows != null) {
+				if (value == null) {
+					addCode(-1);
+					return;
+				}
+				if (value instanceof String) {
+					Integer code = codes.get(value);
+					if (code == null && dictionary.size() < MAX_DICTIONARY) {
+						code = dictionary.size();
+						codes.put((String) value, code);
+						dictionary.add((String) value);
+					}
+					if (code != null) {
+						count++;
+						addCode(code);
+						return;
+					}
+				}
+				uncode();
+			}
+			if (size++ > 0) text.append(',');
+			if (value == null) {
+				text.append("null");
+			} else {
+				JSONObject.writeValue(text, value);
+			}
+		}
+
+		private void addCode(int code) {
+			if (size == rows.length) {
+				// the collection grew while it was read
+				rows = Arrays.copyOf(rows, size * 2 + 1);
+			}
+			rows[size++] = code;
+		}
+
+		/**
+		 * Drop the dictionary if the values repeat too seldom
+		 */
+		private void finish() throws IOException {
+			if (rows != null && (dictionary.isEmpty() || dictionary.size() * MIN_REPETITIONS > count)) {
+				uncode();
+			}
+		}
+
+		/**
+		 * Turn the codes that were collected so far into JSON text
+		 */
+		private void uncode() throws IOException {
+			text = new StringBuilder();
+			for (int r = 0; r < size; r++) {
+				if (r > 0) text.append(',');
+				if (rows[r] < 0) {
+					text.append("null");
+				} else {
+					JSONObject.quote(dictionary.get(rows[r]), text);
+				}
+			}
+			rows = null;
+			codes = null;
+			dictionary = null;
+		}
+
+		private void writeValues(Appendable out) throws IOException {
+			out.append('[');
+			if (rows == null) {
+				out.append(text);
+			} else {
+				for (int r = 0; r < size; r++) {
+					if (r > 0) out.append(',');
+					out.append(rows[r] < 0 ? "null" : String.valueOf(rows[r]));
+				}
+			}
+			out.append(']');
+		}
+
+		private void writeDictionary(Appendable out) throws IOException {
+			if (rows == null) {
+				out.append("null");
+				return;
+			}
+			out.append('[');
+			for (int i = 0; i < dictionary.size(); i++) {
+				if (i > 0) out.append(',');
+				JSONObject.quote(dictionary.get(i), out);
+			}
+			out.append(']');
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import jakarta.faces.context.ExternalContext;
+
+/**
+ * Reads the context-params of the stores from the web.xml
+ */
+public class ContextParams {
+
+	/**
+	 * @param extContext The ExternalContext
+	 * @param name The name of the context-param
+	 * @param defaultValue The value if the context-param is not set
+	 * @return The value of the context-param
+	 * @throws IllegalArgumentException If the context-param is not a number
+	 */
+	public static int getIntParam(ExternalContext extContext, String name, int defaultValue) {
+		String value = extContext.getInitParameter(name);
+		if (value == null || value.trim().length() == 0) return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("The context-param " + name + " must be a number, not " + value, e);
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import jakarta.faces.FacesException;
+import jakarta.faces.application.FacesMessage;
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.convert.Converter;
+import jakarta.faces.convert.ConverterException;
+import jakarta.faces.el.ValueBinding;
+
+/**
+ * Creates the converter of a column of a store's structure. The converter is
+ * either created by the id given in the structure or by the type of the column's
+ * valueBinding. Attributes from the structure are set on the new converter by
+ * an {@link AttributeSetup}, so the setters are resolved once per converter class.
+ * A ConverterFactory is immutable and part of a {@link StorePlan}, while the
+ * converters it creates are used within one request only. The exception are the
+ * standard converters without attributes, they don't hold any state and a single
+ * instance is shared by all requests.
+ */
+public class ConverterFactory {
+
+	/**
+	 * Standard converters that don't keep state between conversions
+	 */
+	private static final Set<String> STATELESS = new HashSet<String>(Arrays.asList(
+			"jakarta.faces.convert.BigDecimalConverter",
+			"jakarta.faces.convert.BigIntegerConverter",
+			"jakarta.faces.convert.BooleanConverter",
+			"jakarta.faces.convert.ByteConverter",
+			"jakarta.faces.convert.CharacterConverter",
+			"jakarta.faces.convert.DoubleConverter",
+			"jakarta.faces.convert.FloatConverter",
+			"jakarta.faces.convert.IntegerConverter",
+			"jakarta.faces.convert.LongConverter",
+			"jakarta.faces.convert.ShortConverter"));
+
+	/**
+	 * @param converter A converter created by a ConverterFactory
+	 * @return Whether converter is a standard converter that keeps no state,
+	 * its getAsString may be called by several threads at once
+	 */
+	static boolean isStateless(Converter converter) {
+		return STATELESS.contains(converter.getClass().getName());
+	}
+
+	private final String id;
+	private final String label;
+	private final Map<String, Object> properties;
+	private volatile AttributeSetup setup;
+	private volatile Shared shared;
+
+	/**
+	 * @param attributes The converter definition of the structure, "id" selects the converter
+	 * and "label" is used in messages, all other entries are set on the converter.
+	 */
+	public ConverterFactory(Map<String, String> attributes) {
+		Map<String, String> myAttributes = new HashMap<String, String>();
+		if (attributes != null) {
+			myAttributes.putAll(attributes);
+		}
+		this.id = myAttributes.remove("id");
+		this.label = myAttributes.remove("label");
+
+		// lang, country and timeZone are set as Locale and TimeZone, the locale is set last
+		Map<String, Object> myProperties = new LinkedHashMap<String, Object>();
+		for (Map.Entry<String, String> attribute : myAttributes.entrySet()) {
+			String name = attribute.getKey();
+			if ("timeZone".equals(name)) {
+				myProperties.put(name, TimeZone.getTimeZone(attribute.getValue()));
+			} else if (!"lang".equals(name) && !"country".equals(name)) {
+				myProperties.put(name, attribute.getValue());
+			}
+		}
+		String lang = myAttributes.get("lang");
+		if (lang != null) {
+			String country = myAttributes.get("country");
+			myProperties.put("locale", country == null ? new Locale(lang) : new Locale(lang, country));
+		}
+		this.properties = Collections.unmodifiableMap(myProperties);
+	}
+
+	/**
+	 * @return the label defined for the converter or null
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * Create and configure a new converter
+	 *
+	 * @param context The FacesContext
+	 * @param valueBinding The column's valueBinding that determines the converter's type if there is no id
+	 * @return The converter or null if neither an id is defined nor a converter is registered for the type
+	 */
+	public Converter create(FacesContext context, ValueBinding valueBinding) {
+		return create(context, id == null && valueBinding != null ? valueBinding.getType(context) : null);
+	}
+
+	/**
+	 * Create and configure a new converter
+	 *
+	 * @param context The FacesContext
+	 * @param clazz The type of the column's values that determines the converter's type if there is no id
+	 * @return The converter or null if neither an id is defined nor a converter is registered for the type
+	 */
+	public Converter create(FacesContext context, Class clazz) {
+		Object key = id != null ? id : clazz;
+		Shared myShared = shared;
+		if (myShared != null && myShared.key.equals(key)) {
+			return myShared.converter;
+		}
+		Converter converter = null;
+		if (id != null) {
+			try {
+				converter = context.getApplication().createConverter(id);
+			} catch (FacesException e) {
+				throw new ConverterException(new FacesMessage("Unable to create converter " + id,
+						"Unable to create converter " + id + " defined in your dojo DataGrid"));
+			}
+		} else if (clazz == java.lang.Number.class) {
+			converter = context.getApplication().createConverter("jakarta.faces.Number");
+		} else if (clazz != null) {
+			converter = context.getApplication().createConverter(clazz);
+		}
+		if (converter != null) {
+			if (properties.isEmpty()) {
+				if (STATELESS.contains(converter.getClass().getName())) {
+					shared = new Shared(key, converter);
+				}
+			} else {
+				configure(context, converter);
+			}
+		}
+		return converter;
+	}
+
+	/**
+	 * Add converter attributes if there are for this column
+	 */
+	private void configure(FacesContext context, Converter converter) {
+		AttributeSetup mySetup = setup;
+		if (mySetup == null || mySetup.getType() != converter.getClass()) {
+			ModelClass modelClass = ModelClass.get(converter.getClass());
+			if (properties.containsKey("locale") && modelClass.getSetter("locale") == null) {
+				throw new IllegalArgumentException("unable to find setLocale for converter " + converter.getClass().getName());
+			}
+			if (properties.containsKey("timeZone") && modelClass.getSetter("timeZone") == null) {
+				throw new IllegalArgumentException("unable to find setTimeZone for converter " + converter.getClass().getName());
+			}
+			mySetup = AttributeSetup.get(context, converter.getClass(), properties);
+			setup = mySetup;
+		}
+		mySetup.apply(converter);
+	}
+
+	private static final class Shared {
+
+		private final Object key;
+		private final Converter converter;
+
+		private Shared(Object key, Converter converter) {
+			this.key = key;
+			this.converter = converter;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.el.ValueExpression;
+import jakarta.faces.component.UIComponent;
+import jakarta.faces.component.UIComponentBase;
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.el.ValueBinding;
+
+/**
+ * A view of the hidden input of a store that answers the label of a single column.
+ * Converters and validators of a column are called with this component, so their
+ * messages name the column like they would if "label" was set on the hidden input,
+ * while the attributes of the hidden input stay untouched: attributes that are set or
+ * removed through the view are kept in an overlay of the view. Everything else is
+ * delegated to the hidden input.
+ *
+ * The view is transient and never added to the component tree.
+ */
+public class LabeledComponent extends UIComponentBase {
+
+	/**
+	 * Marks an attribute that was removed through the view
+	 */
+	private static final Object REMOVED = new Object();
+
+	private final UIComponent component;
+	private final Map<String, Object> attributes;
+
+	private LabeledComponent(UIComponent component, String label) {
+		this.component = component;
+		this.attributes = new LabeledAttributes(label);
+		setTransient(true);
+	}
+
+	/**
+	 * @param component The hidden input
+	 * @param label The label of the column or null
+	 * @return The view that answers label or component itself if label is null
+	 */
+	public static UIComponent wrap(UIComponent component, String label) {
+		if (label == null) return component;
+		return new LabeledComponent(component, label);
+	}
+
+	/**
+	 * @return The hidden input
+	 */
+	public UIComponent getWrapped() {
+		return component;
+	}
+
+	public String getFamily() {
+		return component.getFamily();
+	}
+
+	public Map<String, Object> getAttributes() {
+		return attributes;
+	}
+
+	public ValueExpression getValueExpression(String name) {
+		return component.getValueExpression(name);
+	}
+
+	public ValueBinding getValueBinding(String name) {
+		return component.getValueBinding(name);
+	}
+
+	public String getId() {
+		return component.getId();
+	}
+
+	public String getClientId() {
+		return component.getClientId();
+	}
+
+	public String getClientId(FacesContext context) {
+		return component.getClientId(context);
+	}
+
+	public UIComponent getParent() {
+		return component.getParent();
+	}
+
+	/**
+	 * The attributes of the hidden input with the column's label in place of its own
+	 * and the attributes that were set or removed through the view
+	 */
+	private class LabeledAttributes extends AbstractMap<String, Object> {
+
+		private final Map<String, Object> overlay = new HashMap<String, Object>();
+
+		private LabeledAttributes(String label) {
+			overlay.put("label", label);
+		}
+
+		public Object get(Object key) {
+			if (overlay.containsKey(key)) {
+				Object value = overlay.get(key);
+				return value == REMOVED ? null : value;
+			}
+			return component.getAttributes().get(key);
+		}
+
+		public boolean containsKey(Object key) {
+			if (overlay.containsKey(key)) return overlay.get(key) != REMOVED;
+			return component.getAttributes().containsKey(key);
+		}
+
+		public Object put(String key, Object value) {
+			Object previous = get(key);
+			overlay.put(key, value);
+			return previous;
+		}
+
+		public Object remove(Object key) {
+			Object previous = get(key);
+			if (key instanceof String) overlay.put((String) key, REMOVED);
+			return previous;
+		}
+
+		public Set<Map.Entry<String, Object>> entrySet() {
+			// rarely used, so a snapshot is good enough
+			Map<String, Object> snapshot = new HashMap<String, Object>(component.getAttributes());
+			for (Map.Entry<String, Object> entry : overlay.entrySet()) {
+				if (entry.getValue() == REMOVED) {
+					snapshot.remove(entry.getKey());
+				} else {
+					snapshot.put(entry.getKey(), entry.getValue());
+				}
+			}
+			return snapshot.entrySet();
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.faces.context.ExternalContext;
+import jakarta.faces.context.FacesContext;
+
+/**
+ * A bounded cache that evicts the least recently used entry once maxSize is reached.
+ * The cache is safe for concurrent use and counts hits, misses and evictions.
+ *
+ * Application wide instances are obtained by {@link #getInstance(FacesContext, String)}
+ * and kept in the application map, so the counters can be read through EL,
+ * e.g. #{applicationScope['org.j4fry.dojo.converter.StorePlan'].hits}.
+ * Their size is configured with the context-param J4Fry_STORE_CACHE_SIZE.
+ *
+ * Session wide instances are obtained by
+ * {@link #getSessionInstance(ExternalContext, String, String, int, boolean)}. They are
+ * dropped when the session is serialized, their values are not serialized with it.
+ */
+public class LruCache<K, V> {
+
+	/**
+	 * Context-param that sets the maximum number of entries of the application wide caches
+	 */
+	public static final String SIZE_PARAM = "J4Fry_STORE_CACHE_SIZE";
+
+	/**
+	 * Number of entries if the context-param is not set
+	 */
+	public static final int DEFAULT_SIZE = 256;
+
+	private static final Object LOCK = new Object();
+
+	private final int maxSize;
+	private final Map<K, V> map;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxSize The maximum number of entries
+	 */
+	public LruCache(int maxSize) {
+		if (maxSize < 1) throw new IllegalArgumentException("The size of a cache must be positive, not " + maxSize);
+		this.maxSize = maxSize;
+		this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				if (size() > LruCache.this.maxSize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Get the application wide cache that is stored under key in the application map,
+	 * create it on first use
+	 *
+	 * @param context The FacesContext
+	 * @param key The key within the application map
+	 * @return The cache
+	 */
+	public static <K, V> LruCache<K, V> getInstance(FacesContext context, String key) {
+		Map<String, Object> applicationMap = context.getExternalContext().getApplicationMap();
+		LruCache<K, V> cache = (LruCache<K, V>) applicationMap.get(key);
+		if (cache == null) {
+			synchronized (LOCK) {
+				cache = (LruCache<K, V>) applicationMap.get(key);
+				if (cache == null) {
+					cache = new LruCache<K, V>(ContextParams.getIntParam(context.getExternalContext(), SIZE_PARAM, DEFAULT_SIZE));
+					applicationMap.put(key, cache);
+				}
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Get the cache of the session that is stored under key in the session map
+	 *
+	 * @param extContext The ExternalContext
+	 * @param key The key within the session map
+	 * @param sizeParam The context-param that sets the maximum number of entries
+	 * @param defaultSize The maximum number of entries if the context-param is not set
+	 * @param create Whether to create the cache on first use
+	 * @return The cache or null if it doesn't exist and create is false
+	 */
+	public static <K, V> LruCache<K, V> getSessionInstance(ExternalContext extContext, String key,
+			String sizeParam, int defaultSize, boolean create) {
+		Map<String, Object> sessionMap = extContext.getSessionMap();
+		SessionHolder holder = (SessionHolder) sessionMap.get(key);
+		if (holder == null) {
+			if (!create) return null;
+			holder = new SessionHolder();
+			sessionMap.put(key, holder);
+		}
+		synchronized (holder) {
+			if (holder.cache == null) {
+				holder.cache = new LruCache<Object, Object>(ContextParams.getIntParam(extContext, sizeParam, defaultSize));
+			}
+			return (LruCache<K, V>) holder.cache;
+		}
+	}
+
+	/**
+	 * @param key The key
+	 * @return The cached value or null if the key is not cached
+	 */
+	public V get(K key) {
+		V value;
+		synchronized (map) {
+			value = map.get(key);
+		}
+		if (value == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return value;
+	}
+
+	/**
+	 * Store a value unless another thread stored one for the same key meanwhile
+	 *
+	 * @param key The key
+	 * @param value The value
+	 * @return The value that is cached for key after the call
+	 */
+	public V putIfAbsent(K key, V value) {
+		synchronized (map) {
+			V previous = map.get(key);
+			if (previous != null) return previous;
+			map.put(key, value);
+			return value;
+		}
+	}
+
+	/**
+	 * Store a value, a value that is cached for the same key is replaced
+	 *
+	 * @param key The key
+	 * @param value The value
+	 */
+	public void put(K key, V value) {
+		synchronized (map) {
+			map.put(key, value);
+		}
+	}
+
+	/**
+	 * @param key The key
+	 * @return The value that was cached for key or null
+	 */
+	public V remove(K key) {
+		synchronized (map) {
+			return map.remove(key);
+		}
+	}
+
+	public void clear() {
+		synchronized (map) {
+			map.clear();
+		}
+	}
+
+	public int getSize() {
+		synchronized (map) {
+			return map.size();
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public String toString() {
+		return "LruCache[size=" + getSize() + ", maxSize=" + maxSize + ", hits=" + getHits()
+			+ ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+	}
+
+	/**
+	 * Keeps a cache in the session. The holder itself is serializable so the session
+	 * can be replicated, the cache is dropped when the session is serialized.
+	 */
+	private static class SessionHolder implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private transient LruCache<Object, Object> cache;
+	}
+}
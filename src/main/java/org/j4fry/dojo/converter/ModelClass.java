@@ -0,0 +1,235 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import jakarta.faces.context.FacesContext;
+
+/**
+ * Metadata of a model class: its public no-arg constructor and the getters, setters
+ * and types of its bean properties. Constructors and accessors are unreflected to
+ * MethodHandles once per class, so creating items and writing their properties
+ * doesn't go through reflection or the ELResolver chain for every field.
+ *
+ * Instances are obtained by {@link #get(Class)} or by {@link #forName(FacesContext, String)}
+ * for the modelClass attribute of a store.
+ */
+public final class ModelClass {
+
+	private static final String CACHE_KEY = ModelClass.class.getName();
+
+	private static final ClassValue<ModelClass> MODEL_CLASSES = new ClassValue<ModelClass>() {
+		protected ModelClass computeValue(Class<?> type) {
+			return new ModelClass(type);
+		}
+	};
+
+	private final Class type;
+	private final MethodHandle constructor;
+	private final Map<String, Property> properties;
+
+	private ModelClass(Class type) {
+		this.type = type;
+		this.constructor = findConstructor(type);
+		Map<String, Property> myProperties = new HashMap<String, Property>();
+		try {
+			for (PropertyDescriptor propertyDescriptor : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+				myProperties.put(propertyDescriptor.getName(), new Property(type, propertyDescriptor));
+			}
+		} catch (IntrospectionException e) {
+			// no properties, everything is left to EL
+		}
+		this.properties = Collections.unmodifiableMap(myProperties);
+	}
+
+	/**
+	 * @param type The class
+	 * @return The metadata of type
+	 */
+	public static ModelClass get(Class type) {
+		return MODEL_CLASSES.get(type);
+	}
+
+	/**
+	 * Resolve a class name once, the resolved classes are kept in an application wide {@link LruCache}
+	 *
+	 * @param context The FacesContext
+	 * @param name The fully qualified class name
+	 * @return The metadata of the class
+	 * @throws ClassNotFoundException If there is no class with this name
+	 */
+	public static ModelClass forName(FacesContext context, String name) throws ClassNotFoundException {
+		LruCache<String, ModelClass> cache = LruCache.getInstance(context, CACHE_KEY);
+		ModelClass modelClass = cache.get(name);
+		if (modelClass == null) {
+			modelClass = cache.putIfAbsent(name, get(Class.forName(name)));
+		}
+		return modelClass;
+	}
+
+	public Class getType() {
+		return type;
+	}
+
+	/**
+	 * @return A new instance created by the public no-arg constructor
+	 * @throws InstantiationException If the class has no public no-arg constructor
+	 */
+	public Object newInstance() throws InstantiationException {
+		if (constructor == null) {
+			throw new InstantiationException(type.getName() + " has no public constructor without arguments");
+		}
+		try {
+			return constructor.invoke();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("Unable to create a new " + type.getName(), t);
+		}
+	}
+
+	/**
+	 * @param property The name of a property
+	 * @return The getter as (Object)Object or null if there is no accessible getter
+	 */
+	public MethodHandle getGetter(String property) {
+		Property myProperty = properties.get(property);
+		return myProperty == null ? null : myProperty.getter;
+	}
+
+	/**
+	 * @param property The name of a property
+	 * @return The setter as (Object, Object)void or null if there is no accessible setter
+	 */
+	public MethodHandle getSetter(String property) {
+		Property myProperty = properties.get(property);
+		return myProperty == null ? null : myProperty.setter;
+	}
+
+	/**
+	 * @param property The name of a property
+	 * @return The property's type or null if there is no such property
+	 */
+	public Class getPropertyType(String property) {
+		Property myProperty = properties.get(property);
+		return myProperty == null ? null : myProperty.type;
+	}
+
+	/**
+	 * Write a property by its setter if the value fits the property's type without coercion
+	 *
+	 * @param item An instance of this class
+	 * @param property The name of the property
+	 * @param value The value
+	 * @return false if nothing was written because there is no accessible setter or the value
+	 * has to be coerced by EL
+	 */
+	public boolean setValue(Object item, String property, Object value) {
+		Property myProperty = properties.get(property);
+		if (myProperty == null || myProperty.setter == null || myProperty.type == null) return false;
+		if (value == null ? myProperty.type.isPrimitive() : !box(myProperty.type).isInstance(value)) return false;
+		try {
+			myProperty.setter.invoke(item, value);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("Unable to write property " + property + " of " + type.getName(), t);
+		}
+		return true;
+	}
+
+	private static MethodHandle findConstructor(Class type) {
+		if (!Modifier.isPublic(type.getModifiers()) || Modifier.isAbstract(type.getModifiers())) return null;
+		try {
+			return MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class))
+				.asType(MethodType.methodType(Object.class));
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	private static Class box(Class type) {
+		if (!type.isPrimitive()) return type;
+		return MethodType.methodType(type).wrap().returnType();
+	}
+
+	/**
+	 * Like EL search a public declaration of an accessor if the class itself is not public
+	 */
+	private static Method accessibleMethod(Class type, Method method) {
+		if (method == null) return null;
+		if (Modifier.isPublic(method.getDeclaringClass().getModifiers())) return method;
+		for (Class iface : type.getInterfaces()) {
+			try {
+				Method candidate = accessibleMethod(iface, iface.getMethod(method.getName(), method.getParameterTypes()));
+				if (candidate != null) return candidate;
+			} catch (NoSuchMethodException e) {
+				// try the next interface
+			}
+		}
+		Class superclass = type.getSuperclass();
+		if (superclass != null) {
+			try {
+				return accessibleMethod(superclass, superclass.getMethod(method.getName(), method.getParameterTypes()));
+			} catch (NoSuchMethodException e) {
+				// no public declaration
+			}
+		}
+		return null;
+	}
+
+	private static MethodHandle unreflect(Class type, Method method, MethodType methodType) {
+		Method accessible = accessibleMethod(type, method);
+		if (accessible == null) return null;
+		try {
+			return MethodHandles.publicLookup().unreflect(accessible).asType(methodType);
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	private static final class Property {
+
+		private final Class type;
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+
+		private Property(Class owner, PropertyDescriptor propertyDescriptor) {
+			this.type = propertyDescriptor.getPropertyType();
+			this.getter = unreflect(owner, propertyDescriptor.getReadMethod(),
+					MethodType.methodType(Object.class, Object.class));
+			this.setter = unreflect(owner, propertyDescriptor.getWriteMethod(),
+					MethodType.methodType(void.class, Object.class, Object.class));
+		}
+	}
+}
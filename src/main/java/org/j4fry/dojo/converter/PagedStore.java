@@ -0,0 +1,256 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.faces.component.UIComponent;
+import jakarta.faces.component.UIInput;
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.el.ValueBinding;
+
+import org.j4fry.json.JSONException;
+import org.j4fry.json.JSONObject;
+
+/**
+ * A store that is not rendered into the page but served in slices by
+ * {@link org.j4fry.dojo.listener.StorePagingListener}.
+ * When a store with paging="true" is rendered {@link StoreConverter} registers
+ * the items together with structure, var and key in the session. Requests of a
+ * dojox.data.QueryReadStore or dojox.data.JsonRestStore are then answered with
+ * start/count/sort slices of the items, serialized by the same {@link StoreWriter}
+ * that renders ordinary stores.
+ *
+ * Every render registers the current items again. A session keeps the stores of the
+ * most recently rendered views only, their number is configured with the context-param
+ * J4Fry_PAGED_STORES (default 16). The items are not serialized with the session,
+ * after a passivation or failover the store is served again once its page is rendered.
+ *
+ * The items of a render don't change, so the sorted order of each sort attribute is
+ * computed once and kept with the store until the next render replaces it.
+ */
+public class PagedStore {
+
+	/**
+	 * Context-param that sets the maximum number of paged stores kept per session
+	 */
+	public static final String SIZE_PARAM = "J4Fry_PAGED_STORES";
+
+	/**
+	 * Number of paged stores per session if the context-param is not set
+	 */
+	public static final int DEFAULT_SIZE = 16;
+
+	/**
+	 * Request parameter that carries the clientId of the paged store
+	 */
+	public static final String STORE_PARAM = "org.j4fry.dojo.store";
+
+	/**
+	 * Request parameter that carries the viewId of the page that rendered the store
+	 */
+	public static final String VIEW_PARAM = "org.j4fry.dojo.view";
+
+	private static final String SESSION_KEY = PagedStore.class.getName();
+
+	private Collection items;
+	private String structure;
+	private String var;
+	private String key;
+	private String clientId;
+	private final Map<String, List> sorted = new HashMap<String, List>();
+
+	/**
+	 * Remember the items of a store with paging="true" in the session
+	 *
+	 * @param context The FacesContext
+	 * @param component The hidden input that holds the store
+	 * @param items The Collection of items
+	 */
+	public static void register(FacesContext context, UIComponent component, Collection items) {
+		Map attributes = component.getAttributes();
+		PagedStore store = new PagedStore();
+		store.items = items;
+		store.structure = (String) attributes.get("structure");
+		store.var = (String) attributes.get("var");
+		store.key = (String) attributes.get("key");
+		store.clientId = component.getClientId(context);
+		getStores(context, true).put(key(context.getViewRoot().getViewId(), store.clientId), store);
+	}
+
+	/**
+	 * @param context The FacesContext
+	 * @param viewId The viewId of the page that rendered the store
+	 * @param clientId The clientId of the store's hidden input
+	 * @return The registered store or null if the store was never rendered in this session
+	 */
+	public static PagedStore lookup(FacesContext context, String viewId, String clientId) {
+		LruCache<String, PagedStore> stores = getStores(context, false);
+		return stores == null ? null : stores.get(key(viewId, clientId));
+	}
+
+	private static String key(String viewId, String clientId) {
+		return viewId + ":" + clientId;
+	}
+
+	private static LruCache<String, PagedStore> getStores(FacesContext context, boolean create) {
+		return LruCache.getSessionInstance(context.getExternalContext(), SESSION_KEY, SIZE_PARAM, DEFAULT_SIZE, create);
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return The total number of items
+	 */
+	public int size() {
+		return items == null ? 0 : items.size();
+	}
+
+	/**
+	 * Write a slice of the items as JSON array.
+	 *
+	 * @param context The FacesContext
+	 * @param start Index of the first item
+	 * @param count Maximum number of items, a negative count means all remaining items
+	 * @param sort The attribute to sort by, prefixed by '-' for descending order, may be null
+	 * @param out The target of the JSON text
+	 * @throws IOException If out cannot be written
+	 * @throws JSONException If the structure cannot be parsed
+	 */
+	public void write(FacesContext context, int start, int count, String sort, Appendable out) throws IOException, JSONException {
+		List slice = new ArrayList();
+		if (items != null) {
+			List sorted = sort(context, sort);
+			int end = count < 0 ? sorted.size() : (int) Math.min((long) start + count, sorted.size());
+			for (int i = Math.max(start, 0); i < end; i++) {
+				slice.add(sorted.get(i));
+			}
+		}
+		new StoreConverter().writeStore(context, createComponent(), slice, out);
+	}
+
+	/**
+	 * Write a slice in the format expected by dojox.data.QueryReadStore
+	 *
+	 * @see #write(FacesContext, int, int, String, Appendable)
+	 */
+	public void writeQueryResult(FacesContext context, int start, int count, String sort, Appendable out) throws IOException, JSONException {
+		out.append("{\"identifier\":");
+		JSONObject.quote(key, out);
+		out.append(",\"numRows\":");
+		out.append(String.valueOf(size()));
+		out.append(",\"items\":");
+		write(context, start, count, sort, out);
+		out.append('}');
+	}
+
+	/**
+	 * Sort the items by the raw model value of an attribute of the structure,
+	 * the order of each sort attribute is computed once, see {@link ValueOrder}
+	 */
+	private List sort(FacesContext context, String sort) throws JSONException {
+		List list = items instanceof List ? (List) items : new ArrayList(items);
+		if (sort == null || sort.length() == 0) {
+			return list;
+		}
+		boolean descending = sort.startsWith("-");
+		String attribute = descending || sort.startsWith("+") ? sort.substring(1) : sort;
+		StorePlan.Column column = StorePlan.get(context, structure, key).getColumn(attribute);
+		if (column == null || column.isChildren()) {
+			return list;
+		}
+		String sortKey = (descending ? "-" : "+") + attribute;
+		synchronized (sorted) {
+			List result = sorted.get(sortKey);
+			if (result != null) return result;
+		}
+		ValueBinding itemVb = context.getApplication().createValueBinding("#{" + var + "}");
+		Object[][] entries = new Object[list.size()][];
+		int i = 0;
+		for (Object item : list) {
+			itemVb.setValue(context, item);
+			entries[i++] = new Object[] {column.getValue(context, var, item), item};
+		}
+		itemVb.setValue(context, null);
+		Arrays.sort(entries, new ValueOrder(descending));
+		List result = new ArrayList(entries.length);
+		for (Object[] entry : entries) {
+			result.add(entry[1]);
+		}
+		synchronized (sorted) {
+			sorted.put(sortKey, result);
+		}
+		return result;
+	}
+
+	/**
+	 * The store's hidden input is not available outside of its view,
+	 * so the converters get a stand in that carries the same attributes
+	 */
+	private UIComponent createComponent() {
+		UIInput component = new UIInput();
+		component.setId(clientId.substring(clientId.lastIndexOf(':') + 1));
+		Map attributes = component.getAttributes();
+		attributes.put("structure", structure);
+		attributes.put("var", var);
+		attributes.put("key", key);
+		return component;
+	}
+
+	/**
+	 * A total order of the values of a column, so columns with values of mixed types
+	 * can be sorted: null comes first, then the values are grouped by the name of their
+	 * class. Values of the same class are ordered by compareTo if they are Comparable and
+	 * by their String value otherwise.
+	 */
+	private static class ValueOrder implements Comparator<Object[]> {
+
+		private final boolean descending;
+
+		private ValueOrder(boolean descending) {
+			this.descending = descending;
+		}
+
+		public int compare(Object[] o1, Object[] o2) {
+			int result = compareValues(o1[0], o2[0]);
+			return descending ? -result : result;
+		}
+
+		private static int compareValues(Object v1, Object v2) {
+			if (v1 == null) return v2 == null ? 0 : -1;
+			if (v2 == null) return 1;
+			if (v1.getClass() != v2.getClass()) {
+				int result = v1.getClass().getName().compareTo(v2.getClass().getName());
+				// classes of the same name from different class loaders
+				return result != 0 ? result : Integer.compare(System.identityHashCode(v1.getClass()),
+						System.identityHashCode(v2.getClass()));
+			}
+			if (v1 instanceof Comparable) {
+				return ((Comparable) v1).compareTo(v2);
+			}
+			return String.valueOf(v1).compareTo(String.valueOf(v2));
+		}
+	}
+}
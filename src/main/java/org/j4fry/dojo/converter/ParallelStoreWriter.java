@@ -0,0 +1,256 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import jakarta.faces.application.Application;
+import jakarta.faces.component.UIComponent;
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.convert.Converter;
+import jakarta.faces.el.ValueBinding;
+import jakarta.faces.event.PreDestroyApplicationEvent;
+import jakarta.faces.event.SystemEvent;
+import jakarta.faces.event.SystemEventListener;
+
+import org.j4fry.json.JSONException;
+
+/**
+ * Writes very large stores in parallel. The items are split into chunks that are
+ * serialized on a ForkJoinPool into buffers of their own, the buffers are then
+ * appended to the output in order, so the result is the same as the one of a
+ * single {@link StoreWriter}.
+ *
+ * The parallel path is switched on by the context-param J4Fry_STORE_PARALLEL_THRESHOLD,
+ * the minimum number of items of a store that is written in parallel. It is taken for
+ * RandomAccess Lists of at least this size whose structure has no children and whose
+ * columns are all simple expressions that start with var (see {@link PropertyPath}),
+ * because the chunks cannot bind var in the shared request map. The converters of the
+ * columns are looked up on the request thread, and the store is only written in parallel
+ * if all of them are standard converters without state, like the ones of Integer or Long
+ * columns. Their getAsString neither evaluates EL nor changes the FacesContext or the
+ * component, which are passed to them by the chunks. If an item's value cannot be read
+ * without EL or a conversion fails, the store is written by the serial path, which
+ * reports the failure on the request thread.
+ *
+ * The chunks call the getters of the items outside of the request thread. Only switch
+ * the parallel path on for stores of plain or detached objects, not for entities that
+ * load lazily through a persistence context bound to the request thread.
+ *
+ * The context-param J4Fry_STORE_PARALLELISM sets the size of a pool that is dedicated
+ * to store serialization, by default the common ForkJoinPool is used. A dedicated pool
+ * is shut down when the application is destroyed.
+ */
+public class ParallelStoreWriter {
+
+	/**
+	 * Context-param for the minimum number of items that are written in parallel
+	 */
+	public static final String THRESHOLD_PARAM = "J4Fry_STORE_PARALLEL_THRESHOLD";
+
+	/**
+	 * Context-param for the number of threads of a dedicated pool
+	 */
+	public static final String PARALLELISM_PARAM = "J4Fry_STORE_PARALLELISM";
+
+	/**
+	 * Number of chunks per thread of the pool, more chunks even out items of different size
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private static final String POOL_KEY = ParallelStoreWriter.class.getName() + ".pool";
+	private static final Object LOCK = new Object();
+
+	/**
+	 * Write the store in parallel if it qualifies
+	 *
+	 * @param plan The compiled structure of the store
+	 * @param context The FacesContext
+	 * @param component The hidden input that holds the store
+	 * @param itemVb The valueBinding defined by "var"
+	 * @param list The items
+	 * @param out The target of the JSON text
+	 * @return false if nothing was written because the store has to be written by the serial path
+	 * @throws IOException If out cannot be written
+	 * @throws JSONException If a value is a non-finite number
+	 */
+	public static boolean write(StorePlan plan, FacesContext context, UIComponent component, ValueBinding itemVb,
+			Collection list, Appendable out) throws IOException, JSONException {
+		int threshold = ContextParams.getIntParam(context.getExternalContext(), THRESHOLD_PARAM, 0);
+		if (threshold <= 0 || list.size() < threshold || !(list instanceof List) || !(list instanceof RandomAccess)
+		|| !plan.getChildren().isEmpty()) {
+			return false;
+		}
+		String var = (String) component.getAttributes().get("var");
+		for (StorePlan.Column column : plan.getAttributes()) {
+			if (!column.isCompiled(var)) return false;
+		}
+		List items = (List) list;
+		Object[] witnesses = findWitnesses(plan, var, items);
+		if (witnesses == null) return false;
+		ColumnConverters converters = resolveConverters(plan, context, itemVb, witnesses);
+		if (converters == null) return false;
+
+		ForkJoinPool pool = getPool(context);
+		int chunks = Math.min(items.size(), pool.getParallelism() * CHUNKS_PER_THREAD);
+		int chunkSize = (items.size() + chunks - 1) / chunks;
+		List<ForkJoinTask<StringBuilder>> tasks = new ArrayList<ForkJoinTask<StringBuilder>>();
+		for (int from = 0; from < items.size(); from += chunkSize) {
+			StoreWriter writer = new StoreWriter(plan, converters, context, component, var);
+			tasks.add(pool.submit(new Chunk(writer, items.subList(from, Math.min(from + chunkSize, items.size())))));
+		}
+
+		List<StringBuilder> buffers = new ArrayList<StringBuilder>(tasks.size());
+		try {
+			for (ForkJoinTask<StringBuilder> task : tasks) {
+				buffers.add(task.join());
+			}
+		} catch (StoreWriter.SerialPathException e) {
+			for (ForkJoinTask<StringBuilder> task : tasks) {
+				task.cancel(false);
+			}
+			return false;
+		} catch (RuntimeException e) {
+			// checked exceptions of the chunks are wrapped by the pool
+			if (e.getCause() instanceof JSONException) throw (JSONException) e.getCause();
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw e;
+		}
+		out.append('[');
+		boolean start = true;
+		for (StringBuilder buffer : buffers) {
+			if (start) {
+				start = false;
+			} else {
+				out.append(',');
+			}
+			out.append(buffer);
+		}
+		out.append(']');
+		return true;
+	}
+
+	/**
+	 * The serial path creates a column's converter when it meets the first item with
+	 * a non null value, find these items to look the converters up the same way.
+	 *
+	 * @return The items per column index or null if a value cannot be read without EL
+	 */
+	private static Object[] findWitnesses(StorePlan plan, String var, List items) {
+		Object[] witnesses = new Object[plan.getColumns().size()];
+		List<StorePlan.Column> open = new ArrayList<StorePlan.Column>();
+		for (StorePlan.Column column : plan.getAttributes()) {
+			if (!column.isNumeric()) open.add(column);
+		}
+		for (int i = 0; i < items.size() && !open.isEmpty(); i++) {
+			Object item = items.get(i);
+			for (int j = open.size() - 1; j >= 0; j--) {
+				StorePlan.Column column = open.get(j);
+				Object value = column.getCompiledValue(var, item);
+				if (value == PropertyPath.UNRESOLVED) return null;
+				if (value != null && !(value instanceof Boolean)) {
+					witnesses[column.getIndex()] = item;
+					open.remove(j);
+				}
+			}
+		}
+		return witnesses;
+	}
+
+	/**
+	 * Look the converters up on the request thread, where var can be bound for type lookup
+	 *
+	 * @return The converters or null if a column needs a converter that keeps state
+	 */
+	private static ColumnConverters resolveConverters(StorePlan plan, FacesContext context, ValueBinding itemVb,
+			Object[] witnesses) {
+		ColumnConverters converters = new ColumnConverters(plan);
+		try {
+			for (StorePlan.Column column : plan.getAttributes()) {
+				Object witness = witnesses[column.getIndex()];
+				if (witness != null) {
+					itemVb.setValue(context, witness);
+					Converter converter = converters.get(context, column);
+					if (converter != null && !ConverterFactory.isStateless(converter)) return null;
+				}
+			}
+			return converters;
+		} finally {
+			itemVb.setValue(context, null);
+		}
+	}
+
+	private static ForkJoinPool getPool(FacesContext context) {
+		int parallelism = ContextParams.getIntParam(context.getExternalContext(), PARALLELISM_PARAM, 0);
+		if (parallelism <= 0) return ForkJoinPool.commonPool();
+		Map<String, Object> applicationMap = context.getExternalContext().getApplicationMap();
+		ForkJoinPool pool = (ForkJoinPool) applicationMap.get(POOL_KEY);
+		if (pool == null) {
+			synchronized (LOCK) {
+				pool = (ForkJoinPool) applicationMap.get(POOL_KEY);
+				if (pool == null) {
+					pool = new ForkJoinPool(parallelism);
+					applicationMap.put(POOL_KEY, pool);
+					// don't leak the pool's threads when the application is redeployed
+					context.getApplication().subscribeToEvent(PreDestroyApplicationEvent.class, new PoolShutdown(pool));
+				}
+			}
+		}
+		return pool;
+	}
+
+	private static class PoolShutdown implements SystemEventListener {
+
+		private final ForkJoinPool pool;
+
+		PoolShutdown(ForkJoinPool pool) {
+			this.pool = pool;
+		}
+
+		public boolean isListenerForSource(Object source) {
+			return source instanceof Application;
+		}
+
+		public void processEvent(SystemEvent event) {
+			pool.shutdownNow();
+		}
+	}
+
+	private static class Chunk implements Callable<StringBuilder> {
+
+		private final StoreWriter writer;
+		private final List items;
+
+		Chunk(StoreWriter writer, List items) {
+			this.writer = writer;
+			this.items = items;
+		}
+
+		public StringBuilder call() throws IOException, JSONException {
+			StringBuilder buffer = new StringBuilder(items.size() * 64);
+			writer.writeItems(items, buffer);
+			return buffer;
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.faces.component.UIComponent;
+import jakarta.faces.component.UIInput;
+import jakarta.faces.context.FacesContext;
+
+import org.j4fry.json.JSONException;
+import org.j4fry.json.JSONObject;
+
+/**
+ * The changes of a store that were submitted but not applied to the model because
+ * conversion or validation failed. Instead of letting the JavaScript of InnerStore.xhtml
+ * replay every change against the store, the changes are merged into the store's JSON
+ * text while it is written: changed attributes replace the values read from the items,
+ * deleted items are left out and inserted items are appended. The model isn't touched,
+ * the changes are overlaid on the items while they are read.
+ *
+ * The merged store is written as <pre>{"pending":[...]}</pre> so the JavaScript knows
+ * the changes are already contained. Only flat stores with a key column are merged,
+ * hierarchical stores and changes that don't decode are still replayed on the client.
+ */
+class PendingChanges {
+
+	private final StorePlan plan;
+	private final StorePlan.Column keyColumn;
+	private final Map<String, Map<String, Object>> sets = new HashMap<String, Map<String, Object>>();
+	private final Set<String> deletes = new HashSet<String>();
+	private final List<StoreCommand.Item> inserts = new ArrayList<StoreCommand.Item>();
+
+	private PendingChanges(StorePlan plan, StorePlan.Column keyColumn) {
+		this.plan = plan;
+		this.keyColumn = keyColumn;
+	}
+
+	/**
+	 * @param context The FacesContext
+	 * @param component The hidden input that holds the store
+	 * @param plan The compiled structure of the store
+	 * @return The pending changes or null if there are none or they can't be merged on the server
+	 */
+	static PendingChanges get(FacesContext context, UIComponent component, StorePlan plan) {
+		if (!plan.getChildren().isEmpty()) return null;
+		Object updateId = component.getAttributes().get("updateId");
+		StorePlan.Column keyColumn = plan.getKeyColumn();
+		if (updateId == null || keyColumn == null) return null;
+		UIComponent update = component.findComponent(String.valueOf(updateId));
+		if (!(update instanceof UIInput) || ((UIInput) update).isValid()) return null;
+		Object submittedValue = ((UIInput) update).getSubmittedValue();
+		if (!(submittedValue instanceof String)) return null;
+		StoreCommands commands;
+		try {
+			commands = StoreUpdateConverter.decode(context, update, (String) submittedValue, false);
+		} catch (Exception e) {
+			// conversion failed, the client replays the changes
+			return null;
+		}
+		if (commands == null || commands.isEmpty()) return null;
+		PendingChanges pending = new PendingChanges(plan, keyColumn);
+		for (StoreCommand command : commands) {
+			if (command instanceof StoreCommand.Insert) {
+				pending.inserts.add(((StoreCommand.Insert) command).getItem());
+			} else if (command instanceof StoreCommand.Set) {
+				StoreCommand.Set set = (StoreCommand.Set) command;
+				Map<String, Object> attributes = pending.sets.get(set.getKey());
+				if (attributes == null) {
+					attributes = new HashMap<String, Object>();
+					pending.sets.put(set.getKey(), attributes);
+				}
+				for (int i = 0; i < set.getItem().size(); i++) {
+					attributes.put(set.getItem().getName(i), leaf(set.getItem().getValue(i)));
+				}
+			} else if (command instanceof StoreCommand.Delete) {
+				pending.deletes.add(((StoreCommand.Delete) command).getKey());
+			}
+		}
+		return pending;
+	}
+
+	/**
+	 * Write the items with the pending changes merged in
+	 *
+	 * @param writer The writer that converts the values
+	 * @param list The items
+	 * @param out The target of the JSON text
+	 * @throws IOException If out cannot be written
+	 * @throws JSONException If a value is a non-finite number
+	 */
+	void write(StoreWriter writer, Collection list, Appendable out) throws IOException, JSONException {
+		out.append("{\"pending\":[");
+		boolean first = true;
+		for (Object item : list) {
+			writer.bind(item);
+			String key = String.valueOf(writer.getJsonValue(keyColumn, item));
+			if (deletes.contains(key)) continue;
+			Map<String, Object> changes = sets.get(key);
+			if (!first) out.append(',');
+			first = false;
+			out.append('{');
+			boolean start = true;
+			for (StorePlan.Column column : plan.getAttributes()) {
+				Object jsonValue = changes != null && changes.containsKey(column.getName())
+					? writer.toJsonValue(column, changes.get(column.getName()))
+					: writer.getJsonValue(column, item);
+				start = writeAttribute(column.getName(), jsonValue, start, out);
+			}
+			out.append('}');
+		}
+		for (StoreCommand.Item insert : inserts) {
+			if (!first) out.append(',');
+			first = false;
+			out.append('{');
+			boolean start = true;
+			for (int i = 0; i < insert.size(); i++) {
+				StorePlan.Column column = plan.getColumn(insert.getName(i));
+				Object value = leaf(insert.getValue(i));
+				Object jsonValue = column == null ? value : writer.toJsonValue(column, value);
+				start = writeAttribute(insert.getName(i), jsonValue, start, out);
+			}
+			out.append('}');
+		}
+		out.append("]}");
+	}
+
+	/**
+	 * Leafs are encoded as one-element-arrays by dojo stores
+	 */
+	private static Object leaf(Object value) {
+		if (value instanceof List) {
+			List list = (List) value;
+			return list.isEmpty() ? null : list.get(0);
+		}
+		return value;
+	}
+
+	private static boolean writeAttribute(String name, Object jsonValue, boolean start, Appendable out) 
+			throws IOException, JSONException {
+		// null values are left out like JSONObject.put does
+		if (jsonValue == null) return start;
+		if (!start) out.append(',');
+		JSONObject.quote(name, out);
+		out.append(':');
+		JSONObject.writeValue(out, jsonValue);
+		return false;
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled form of simple structure expressions like #{item.name} or #{item.address.city}.
+ * The properties are read by MethodHandles of the bean getters instead of
+ * walking the ELResolver chain for every cell. The getters are looked up once
+ * per class by {@link ModelClass}.
+ *
+ * Expressions that are not a plain chain of identifiers are not compiled.
+ * For bases where a getter cannot be found or accessed, e.g. Lists, arrays or
+ * non public classes, {@link #getValue(Object)} answers {@link #UNRESOLVED} and
+ * the caller has to evaluate the expression by EL.
+ */
+public final class PropertyPath {
+
+	/**
+	 * Returned by {@link #getValue(Object)} if a property cannot be read without EL
+	 */
+	public static final Object UNRESOLVED = new Object();
+
+	private static final Pattern SIMPLE_EXPRESSION =
+		Pattern.compile("^#\\{\\s*([A-Za-z_$][\\w$]*)((?:\\s*\\.\\s*[A-Za-z_$][\\w$]*)*)\\s*\\}$");
+
+	private final String root;
+	private final String[] properties;
+
+	private PropertyPath(String root, String[] properties) {
+		this.root = root;
+		this.properties = properties;
+	}
+
+	/**
+	 * @param expression A value expression of the structure
+	 * @return The compiled path or null if the expression is not a plain property chain
+	 */
+	public static PropertyPath compile(String expression) {
+		if (expression == null) return null;
+		Matcher matcher = SIMPLE_EXPRESSION.matcher(expression);
+		if (!matcher.matches()) return null;
+		String chain = matcher.group(2).replaceAll("\\s", "");
+		String[] properties = chain.length() == 0 ? new String[0] : chain.substring(1).split("\\.");
+		return new PropertyPath(matcher.group(1), properties);
+	}
+
+	/**
+	 * @return The identifier the expression starts with
+	 */
+	public String getRoot() {
+		return root;
+	}
+
+	/**
+	 * Read the property chain starting at base, like EL does null intermediate values yield null
+	 *
+	 * @param base The object that is bound to the root identifier
+	 * @return The value or {@link #UNRESOLVED} if a property cannot be read without EL
+	 */
+	public Object getValue(Object base) {
+		Object value = base;
+		for (String property : properties) {
+			if (value == null) return null;
+			value = getValue(value, property);
+			if (value == UNRESOLVED) return UNRESOLVED;
+		}
+		return value;
+	}
+
+	/**
+	 * Write the last property of the chain, the properties before are read like in {@link #getValue(Object)}
+	 *
+	 * @param base The object that is bound to the root identifier
+	 * @param value The new value
+	 * @return false if nothing was written because the property can only be written by EL
+	 */
+	public boolean setValue(Object base, Object value) {
+		if (properties.length == 0) return false;
+		Object parent = getParent(base);
+		if (parent == null || parent == UNRESOLVED || parent instanceof Map) return false;
+		return ModelClass.get(parent.getClass()).setValue(parent, properties[properties.length - 1], value);
+	}
+
+	/**
+	 * @param base The object that is bound to the root identifier
+	 * @return The type of the last property of the chain or null if it can only be determined by EL
+	 */
+	public Class getType(Object base) {
+		if (properties.length == 0) return null;
+		Object parent = getParent(base);
+		if (parent == null || parent == UNRESOLVED || parent instanceof Map) return null;
+		return ModelClass.get(parent.getClass()).getPropertyType(properties[properties.length - 1]);
+	}
+
+	/**
+	 * @param base The object that is bound to the root identifier
+	 * @return Whether the last property of the chain has an accessible setter
+	 */
+	public boolean isWritable(Object base) {
+		if (properties.length == 0) return false;
+		Object parent = getParent(base);
+		if (parent == null || parent == UNRESOLVED || parent instanceof Map) return false;
+		return ModelClass.get(parent.getClass()).getSetter(properties[properties.length - 1]) != null;
+	}
+
+	private Object getParent(Object base) {
+		Object value = base;
+		for (int i = 0; i < properties.length - 1; i++) {
+			if (value == null) return null;
+			value = getValue(value, properties[i]);
+			if (value == UNRESOLVED) return UNRESOLVED;
+		}
+		return value;
+	}
+
+	private static Object getValue(Object base, String property) {
+		if (base instanceof Map) {
+			return ((Map) base).get(property);
+		}
+		MethodHandle getter = ModelClass.get(base.getClass()).getGetter(property);
+		if (getter == null) return UNRESOLVED;
+		try {
+			return getter.invoke(base);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("Unable to read property " + property + " of " + base.getClass().getName(), t);
+		}
+	}
+}
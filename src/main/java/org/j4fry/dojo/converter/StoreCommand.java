@@ -0,0 +1,173 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.j4fry.json.JSONArray;
+import org.j4fry.json.JSONObject;
+
+/**
+ * A single change of a dataStore as decoded by {@link StoreUpdateDecoder}:
+ * an {@link Insert}, a {@link Set} or a {@link Delete}.
+ */
+public abstract class StoreCommand {
+
+	/**
+	 * An item that was added to the store
+	 */
+	public static final class Insert extends StoreCommand {
+
+		private final Item item;
+
+		Insert(Item item) {
+			this.item = item;
+		}
+
+		/**
+		 * @return The attributes of the new item
+		 */
+		public Item getItem() {
+			return item;
+		}
+	}
+
+	/**
+	 * Attributes of an existing item that were changed
+	 */
+	public static final class Set extends StoreCommand {
+
+		private final String key;
+		private final Item item;
+
+		Set(String key, Item item) {
+			this.key = key;
+			this.item = item;
+		}
+
+		/**
+		 * @return The key of the changed item
+		 */
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return The changed attributes
+		 */
+		public Item getItem() {
+			return item;
+		}
+	}
+
+	/**
+	 * An item that was removed from the store
+	 */
+	public static final class Delete extends StoreCommand {
+
+		private final String key;
+
+		Delete(String key) {
+			this.key = key;
+		}
+
+		/**
+		 * @return The key of the deleted item
+		 */
+		public String getKey() {
+			return key;
+		}
+	}
+
+	/**
+	 * The attributes of an item in the order they were sent. Leafs are converted
+	 * by the converters of their columns, the children of hierarchical stores are
+	 * a List of Items.
+	 */
+	public static final class Item {
+
+		private final List<String> names = new ArrayList<String>();
+		private final List<Object> values = new ArrayList<Object>();
+		private JSONObject json;
+
+		void add(String name, Object value) {
+			names.add(name);
+			values.add(value);
+		}
+
+		public int size() {
+			return names.size();
+		}
+
+		/**
+		 * @param i The position of the attribute
+		 * @return The attribute name
+		 */
+		public String getName(int i) {
+			return names.get(i);
+		}
+
+		/**
+		 * @param i The position of the attribute
+		 * @return The converted value, a List for arrays or an Item for objects
+		 */
+		public Object getValue(int i) {
+			return values.get(i);
+		}
+
+		/**
+		 * @param name The attribute name
+		 * @return Whether the item contains the attribute
+		 */
+		public boolean has(String name) {
+			return names.contains(name);
+		}
+
+		/**
+		 * The onInsert and onUpdate callbacks receive the attributes as JSONObject,
+		 * it is only created when a callback asks for it.
+		 *
+		 * @return The attributes as JSONObject
+		 */
+		public JSONObject toJSONObject() {
+			if (json == null) {
+				Map<String, Object> map = new LinkedHashMap<String, Object>();
+				for (int i = 0; i < names.size(); i++) {
+					map.put(names.get(i), toJSON(values.get(i)));
+				}
+				json = new JSONObject(map);
+			}
+			return json;
+		}
+
+		private static Object toJSON(Object value) {
+			if (value instanceof Item) {
+				return ((Item) value).toJSONObject();
+			} else if (value instanceof List) {
+				List<Object> list = (List<Object>) value;
+				List<Object> json = new ArrayList<Object>(list.size());
+				for (Object element : list) {
+					json.add(toJSON(element));
+				}
+				return new JSONArray(json);
+			}
+			return value;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.faces.application.FacesMessage;
+
+/**
+ * The changes of a dataStore in the order they were made, as decoded by {@link StoreUpdateDecoder}.
+ * The JSON text they were decoded from is kept for validation roundtrips, in this case
+ * the changes are restored into the dataStore using JavaScript.
+ */
+public class StoreCommands extends ArrayList<StoreCommand> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String source;
+	private List<FacesMessage> validationMessages;
+
+	/**
+	 * @param source The JSON text of the changes
+	 */
+	StoreCommands(String source) {
+		this.source = source;
+	}
+
+	/**
+	 * @return Whether the leafs were validated while they were decoded
+	 */
+	public boolean isValidated() {
+		return validationMessages != null;
+	}
+
+	/**
+	 * @return The messages of the validators that failed while the changes were decoded,
+	 * null if the changes were not validated while decoding
+	 */
+	public List<FacesMessage> getValidationMessages() {
+		return validationMessages;
+	}
+
+	void setValidationMessages(List<FacesMessage> validationMessages) {
+		this.validationMessages = validationMessages;
+	}
+
+	/**
+	 * @return The JSON text the changes were decoded from
+	 */
+	public String toString() {
+		return source;
+	}
+}
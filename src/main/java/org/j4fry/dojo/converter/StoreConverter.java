@@ -18,20 +18,16 @@
  */
 package org.j4fry.dojo.converter;
 
+import java.io.IOException;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 import jakarta.faces.component.UIComponent;
 import jakarta.faces.context.FacesContext;
-import jakarta.faces.convert.Converter;
 import jakarta.faces.convert.ConverterException;
 import jakarta.faces.el.ValueBinding;
 
-import org.j4fry.json.JSONArray;
 import org.j4fry.json.JSONException;
-import org.j4fry.json.JSONObject;
 
 /**
  * This converter converts a Collection of Objects to a JSON String based on the dataStore's structure.
@@ -45,81 +41,105 @@ import org.j4fry.json.JSONObject;
  */
 public class StoreConverter extends StoreConverterBase {
 
-	protected Map<String, Boolean> numeric = new HashMap<String, Boolean>();
-
 	public Object getAsObject(FacesContext context, UIComponent component, String store) throws ConverterException {
 		return component.getAttributes().get("items");
 	}
 
 	public String getAsString(FacesContext context, UIComponent component, Object value) {
-		if (value == null || value instanceof String) return "[]";
+		StringBuilder result = new StringBuilder();
+		try {
+			writeStore(context, component, value, result);
+		} catch (IOException e) {
+			throw new ConverterException(e.getMessage(), e);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Stream the JSON representation of the store to out instead of building a String.
+	 * This is used by {@link org.j4fry.dojo.renderer.StoreRenderer} to write the store
+	 * directly to the ResponseWriter.
+	 * 
+	 * @param context The FacesContext
+	 * @param component The hidden input that holds the store
+	 * @param value The Collection of items
+	 * @param out The target of the JSON text
+	 * @throws IOException If out cannot be written
+	 */
+	public void writeStore(FacesContext context, UIComponent component, Object value, Appendable out) throws IOException {
+		if (value == null || value instanceof String) {
+			out.append("[]");
+			return;
+		}
 		Collection list = (Collection) value;
 		// The attributes are nested in the fields to allow converter access
 		Map attributes = component.getAttributes();
-		String structure = (String) attributes.get("structure");
-		String var = (String) attributes.get("var");
-		ValueBinding itemVb = context.getApplication().createValueBinding("#{" + var + "}");
-    	try {
-    		// determine the String definitions of valueBindings and converters and store them in Maps 
-			tokenizeStructure(structure, context, valueBindingStrings, childrenStrings, numeric, converterStrings, null);
-			// create valueBindings from the previously determined Strings
-			Iterator<String> childrenIterator = childrenStrings.keySet().iterator();
-			while (childrenIterator.hasNext()) {
-				String key = childrenIterator.next();
-				children.put(key, context.getApplication().createValueBinding(childrenStrings.get(key)));
+		if ("true".equals(String.valueOf(attributes.get("paging")))) {
+			// the items are served in slices by the StorePagingListener
+			PagedStore.register(context, component, list);
+			out.append("[]");
+			return;
+		}
+		if (!StoreDelta.isEnabled(component) && !ColumnarStoreWriter.isEnabled(component)) {
+			// after a failed conversion or validation the pending changes are merged into the store
+			StorePlan plan = getPlan(context, component);
+			PendingChanges pending = PendingChanges.get(context, component, plan);
+			if (pending != null) {
+				String var = (String) attributes.get("var");
+				ValueBinding itemVb = context.getApplication().createValueBinding("#{" + var + "}");
+				try {
+					pending.write(new StoreWriter(plan, context, component, itemVb), list, out);
+				} catch (JSONException e) {
+					throw new ConverterException(e.getMessage(), e);
+				}
+				return;
 			}
-			Iterator<String> vbIterator = valueBindingStrings.keySet().iterator();
-			while (vbIterator.hasNext()) {
-				String key = vbIterator.next();
-				valueBindings.put(key, context.getApplication().createValueBinding(valueBindingStrings.get(key)));
+		}
+		String cacheKey = (String) attributes.get("cacheKey");
+		if (cacheKey != null && cacheKey.length() > 0 && !StoreDelta.isEnabled(component)) {
+			// reference data is serialized once for all sessions, the JSON text also
+			// depends on the structure, the format and the locale used by the converters
+			String key = cacheKey + '\n' + attributes.get("structure") + '\n' + attributes.get("format") 
+				+ '\n' + context.getViewRoot().getLocale();
+			String version = attributes.get("cacheVersion") == null ? null : String.valueOf(attributes.get("cacheVersion"));
+			String json = StorePayloadCache.get(context, key, version);
+			if (json == null) {
+				StringBuilder result = new StringBuilder();
+				write(context, component, list, result);
+				json = result.toString();
+				StorePayloadCache.put(context, key, version, json);
 			}
-			// Now build the result String
-			String result = buildJSON(list, itemVb, context, component).toString();
-			return result;
+			out.append(json);
+			return;
+		}
+		write(context, component, list, out);
+	}
+
+	private StorePlan getPlan(FacesContext context, UIComponent component) {
+		try {
+			Map attributes = component.getAttributes();
+			return StorePlan.get(context, (String) attributes.get("structure"), (String) attributes.get("key"));
 		} catch (JSONException e) {
 			throw new ConverterException(e.getMessage(), e);
 		}
 	}
 
-	private JSONArray buildJSON(Collection list, ValueBinding itemVb, FacesContext context, UIComponent component) throws JSONException {
-		JSONArray result = new JSONArray();
-		boolean start = true;
-		for (Object item : list) {
-			// put the next item into the valueBinding defined by "var"
-			itemVb.setValue(context, item);
-			
-			// prepare a Map for the JSON Object
-			JSONObject jsonContent = new JSONObject();
-			
-			// iterate over the structure'S valueBindings to fill the Object
-			Iterator<String> jsonIt = valueBindings.keySet().iterator();
-			while (jsonIt.hasNext()) {
-				String jsonKey = jsonIt.next();
-				Object jsonValue = valueBindings.get(jsonKey).getValue(context);
-				// Only look for a converter for non null values. Booleans are converted by JSONObject's toString method.
-				if (jsonValue != null && !(jsonValue instanceof Boolean) 
-				&& !(Boolean.TRUE.equals(numeric.get(jsonKey)))) {
-	            	Converter converter = StoreConverterBase.determineConverter(context, component, 
-	            			jsonKey, converters, converterStrings, valueBindings, valueBindingStrings, false);
-	            	if (converter != null) {
-	            		jsonValue = converter.getAsString(context, component, jsonValue);
-	            	}
-				}
-				jsonContent.put(jsonKey, jsonValue);
-			}
-			
-			// recurse for children
-			Iterator<String> childrenIt = children.keySet().iterator();
-			while (childrenIt.hasNext()) {
-				String childrenKey = childrenIt.next();
-				Object childList = children.get(childrenKey).getValue(context);
-				if (childList instanceof Collection) {
-					jsonContent.put(childrenKey, buildJSON((Collection) childList, itemVb, context, component));
-				}
+	private void write(FacesContext context, UIComponent component, Collection list, Appendable out) throws IOException {
+		Map attributes = component.getAttributes();
+		String structure = (String) attributes.get("structure");
+		String var = (String) attributes.get("var");
+		ValueBinding itemVb = context.getApplication().createValueBinding("#{" + var + "}");
+    	try {
+			// stream the items using the compiled structure, stores with delta="true" may be written as patch,
+			// stores with format="columnar" column by column and very large stores in parallel
+			StorePlan plan = StorePlan.get(context, structure, (String) attributes.get("key"));
+			if (!StoreDelta.write(plan, context, component, itemVb, list, out)
+			&& !ColumnarStoreWriter.write(plan, context, component, itemVb, list, out)
+			&& !ParallelStoreWriter.write(plan, context, component, itemVb, list, out)) {
+				new StoreWriter(plan, context, component, itemVb).write(list, out);
 			}
-			
-			result.put(jsonContent);
+		} catch (JSONException e) {
+			throw new ConverterException(e.getMessage(), e);
 		}
-		return result;
 	}
 }
@@ -18,12 +18,6 @@
  */
 package org.j4fry.dojo.converter;
 
-import java.beans.BeanInfo;
-import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -32,14 +26,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.TimeZone;
 
-import jakarta.faces.FacesException;
-import jakarta.faces.application.FacesMessage;
 import jakarta.faces.component.UIComponent;
 import jakarta.faces.context.FacesContext;
 import jakarta.faces.convert.Converter;
-import jakarta.faces.convert.ConverterException;
 import jakarta.faces.el.ValueBinding;
 
 import org.j4fry.json.JSONArray;
@@ -48,18 +38,52 @@ import org.j4fry.json.JSONObject;
 
 /**
  * Base class for {@link StoreConverter} and {@link StoreUpdateConverter}
- * to handle processing of dataGrids content attribute
+ * to handle processing of dataGrids content attribute.
+ * The tokenized structure is compiled into a {@link StorePlan}.
  */
 public abstract class StoreConverterBase implements Converter {
 
+	/**
+	 * @deprecated The converters resolve their columns through a {@link StorePlan} and
+	 * no longer fill these maps, they are kept for subclasses only.
+	 */
+	@Deprecated
 	protected Map<String, ValueBinding> valueBindings = new HashMap<String, ValueBinding>();
+	/** @deprecated see {@link #valueBindings} */
+	@Deprecated
 	protected Map<String, String> valueBindingStrings = new HashMap<String, String>();
+	/** @deprecated see {@link #valueBindings} */
+	@Deprecated
 	protected Map<String, Map<String, String>> converterStrings = new HashMap<String, Map<String, String>>();
+	/** @deprecated see {@link #valueBindings} */
+	@Deprecated
 	protected Map<String, Converter> converters = new HashMap<String, Converter>();
+	/** @deprecated see {@link #valueBindings} */
+	@Deprecated
 	protected Map<String, String> childrenStrings = new HashMap<String, String>();
+	/** @deprecated see {@link #valueBindings} */
+	@Deprecated
 	protected Map<String, ValueBinding> children = new HashMap<String, ValueBinding>();
 
-	private static Map<String, JSONObject> structureCache = new HashMap<String, JSONObject>();
+	private static final String STRUCTURE_CACHE_KEY = StoreConverterBase.class.getName() + ".structureCache";
+
+	/**
+	 * Parse a structure or take it from the application wide structure cache
+	 * 
+	 * @param structure A JSON String defining the structure of the store
+	 * @param context The FacesContext
+	 * @return The parsed structure, it is shared between threads and cannot be modified
+	 * @throws JSONException
+	 */
+	public static JSONObject parseStructure(String structure, FacesContext context) throws JSONException {
+		LruCache<String, JSONObject> structureCache = LruCache.getInstance(context, STRUCTURE_CACHE_KEY);
+		JSONObject jsonContent = structureCache.get(structure);
+		if (jsonContent == null) {
+			jsonContent = structureCache.putIfAbsent(structure, new JSONObject(structure).toUnmodifiable());
+		}
+		return jsonContent;
+	}
+
 	/**
 	 * Determines the String definitions of valueBindings, converters and validators and stores them in Maps.
 	 * 
@@ -77,11 +101,7 @@ public abstract class StoreConverterBase implements Converter {
     		Map<String, Map<String, String>> converterStrings,
     		Map<String, List<Map<String, Object>>> validatorStrings) throws JSONException {
 		if (structure != null) {
-			JSONObject jsonContent = structureCache.get(structure);
-			if (jsonContent == null) {
-				jsonContent = new JSONObject((String) structure);
-				structureCache.put(structure, jsonContent);
-			}
+			JSONObject jsonContent = parseStructure(structure, context);
 			for(Iterator<String> contentKeys = jsonContent.keys(); contentKeys.hasNext();) {
 				String contentKey = contentKeys.next();
 				Object column = jsonContent.get(contentKey);
@@ -149,123 +169,32 @@ public abstract class StoreConverterBase implements Converter {
 		validatorList.add(myValidatorParams);
 	}
 
+	/**
+	 * Determines the converter of a column and puts it into converters. The converter is
+	 * created by a {@link ConverterFactory} like the converters of a {@link ColumnConverters}.
+	 * 
+	 * @deprecated Use {@link StorePlan#get(FacesContext, String)} and {@link ColumnConverters#get(FacesContext, String)},
+	 * they create the valueBindings and converter setups once per structure.
+	 */
+	@Deprecated
 	public static Converter determineConverter(FacesContext context, UIComponent component, String key,
 			Map<String, Converter> converters,
 			Map<String, Map<String, String>> converterStrings,
 			Map<String, ValueBinding> valueBindings,
 			Map<String, String> valueBindingStrings, boolean defaultDateConverter) {
-		Converter converter = null;
-    	if (converters.get(key) != null) {
-    		converter = converters.get(key);
-    	} else {
-    		if (converterStrings.get(key) != null && converterStrings.get(key).get("id") != null){
-    			try {
-    				converter = context.getApplication().createConverter(converterStrings.get(key).get("id"));
-    			} catch (FacesException e) {
-   					throw new ConverterException(new FacesMessage("Unable to create converter " + converterStrings.get(key).get("id"), 
-   							"Unable to create converter " + converterStrings.get(key).get("id") + " defined in your dojo DataGrid"));
-    			}
-        	} else {
-        		if (valueBindings.get(key) == null) {
-        			if (valueBindingStrings.get(key) != null) {
-                		ValueBinding vb = context.getApplication().createValueBinding(valueBindingStrings.get(key));
-                		valueBindings.put(key, vb);
-        			}
-        		}
-        		if (valueBindings.get(key) != null) {
-	        		Class clazz = valueBindings.get(key).getType(context);
-	        		if (clazz == java.lang.Number.class) {
-	        			converter = context.getApplication().createConverter("jakarta.faces.Number");
-	        		} else {
-	        			converter = context.getApplication().createConverter(clazz);
-	        		}
-        		}
-        	}
-    	}
-    	if (converter != null) {
-    		converters.put(key, converter);
-    		if (converterStrings.get(key) != null) {
-    			// Add converter attributes if there are for this column
-        		String lang = null;
-        		String country = null;
-        		for (String converterAttribute : converterStrings.get(key).keySet()) {
-        			if ("lang".equals(converterAttribute)) {
-        				lang = converterStrings.get(key).get("lang");
-        				continue;
-        			} else if ("country".equals(converterAttribute)) {
-        				country = converterStrings.get(key).get("country");
-        				continue;
-        			} else if ("label".equals(converterAttribute)) {
-        				continue;
-        			} else if ("timeZone".equals(converterAttribute)) {
-        				Method setter = null;
-        				try {
-    						setter = converter.getClass().getDeclaredMethod("setTimeZone", new Class[] {TimeZone.class});
-    					} catch (Exception e) {
-    						throw new IllegalArgumentException("unable to find setTimeZone for converter " + converter.getClass().getName(), e);
-    					}
-    					if (setter != null) {
-    						try {
-    							setter.invoke(converter, TimeZone.getTimeZone(converterStrings.get(key).get("timeZone")));
-    						} catch (Exception e) {
-    							throw new IllegalArgumentException("Exception invoking setLocale for converter " + converter.getClass().getName(), e);
-    						}
-    					}
-        			} else if (!"id".equals(converterAttribute)) {
-        				BeanInfo beanInfo;
-						try {
-							beanInfo = Introspector.getBeanInfo(converter.getClass());
-						} catch (IntrospectionException e1) {
-							throw new IllegalArgumentException("Intorspection into " + converter.getClass().getName() + " failed.", e1);
-						}
-        				PropertyDescriptor[] propertyDescriptors = beanInfo.getPropertyDescriptors();
-        				for (PropertyDescriptor propertyDescriptor : propertyDescriptors) {
-        					if (propertyDescriptor.getName().equals(converterAttribute)) {
-        						Method setter = propertyDescriptor.getWriteMethod();
-        						Class paramType = setter.getParameterTypes()[0];
-        						try {
-        							setter.invoke(converter, StoreConverterBase.coerceTo(paramType, converterStrings.get(key).get(converterAttribute)));
-        						} catch (IllegalAccessException e) {
-        							throw new IllegalArgumentException("IllegalAccessException invoking setter for " + 
-        									propertyDescriptor.getName() + " for validator " + converter.getClass().getName(), e);
-        						} catch (InvocationTargetException e) {
-        							throw new IllegalArgumentException("InvocationTargetException invoking setter for " + 
-        									propertyDescriptor.getName() + " for validator " + converter.getClass().getName(), e);
-        						} catch (ParseException e) {
-        							throw new IllegalArgumentException("ParseException invoking setter for " + 
-        									propertyDescriptor.getName() + " for validator " + converter.getClass().getName(), e);
-        						}
-        					}
-        					
-        				}
-        			}
-        		}
-        		if (lang != null) {
-    				Method setter = null;
-    				try {
-						setter = converter.getClass().getDeclaredMethod("setLocale", new Class[] {Locale.class});
-					} catch (Exception e) {
-						throw new IllegalArgumentException("unable to find setLocale for converter " + converter.getClass().getName(), e);
-					}
-					if (setter != null) {
-						Locale myLocale = null;
-						if (country == null) {
-							myLocale = new Locale(lang);
-						} else {
-							myLocale = new Locale(lang, country);
-						}
-						try {
-							setter.invoke(converter, myLocale);
-						} catch (Exception e) {
-							throw new IllegalArgumentException("Exception invoking setLocale for converter " + converter.getClass().getName(), e);
-						}
-					}
-        		}
-    		}
-    	}
+		Converter converter = converters.get(key);
+		if (converter == null) {
+			if (valueBindings.get(key) == null && valueBindingStrings.get(key) != null) {
+				valueBindings.put(key, context.getApplication().createValueBinding(valueBindingStrings.get(key)));
+			}
+			converter = new ConverterFactory(converterStrings.get(key)).create(context, valueBindings.get(key));
+			if (converter != null) {
+				converters.put(key, converter);
+			}
+		}
 		return converter;
 	}
-	
+
 	public static Object coerceTo(Class paramType, Object object) throws ParseException {
 		if (paramType.isAssignableFrom(object.getClass())) {
 			return object;
@@ -292,7 +221,7 @@ public abstract class StoreConverterBase implements Converter {
 				}
 			} else if (object instanceof String) {
 				NumberFormat nf = NumberFormat.getInstance(new Locale("en", "us"));
-				return nf.parse((String) object);
+				return coerceTo(paramType, nf.parse((String) object));
 			}
 		}
 		return null;
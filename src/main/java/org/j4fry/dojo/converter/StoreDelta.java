@@ -0,0 +1,187 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import jakarta.faces.component.UIComponent;
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.el.ValueBinding;
+
+import org.j4fry.json.JSONException;
+import org.j4fry.json.JSONObject;
+
+/**
+ * Renders a store with delta="true" as a patch against the rows that were sent before.
+ * For every rendered row a 64 bit fingerprint of its JSON text is remembered per key
+ * in a bounded cache of the session. The view map only holds a token that identifies
+ * the fingerprints of the last render, so they don't become part of a client side
+ * view state. When the store is rendered again during an ajax request only the rows
+ * that were inserted or changed since are written, together with the keys of the rows
+ * that were deleted:
+ * <pre>{"token":"...","upsert":[{...},{...}],"remove":["key1","key2"]}</pre>
+ * The JavaScript of InnerStore.xhtml applies the patch to the existing ItemFileWriteStore.
+ * Full renders write all rows: <pre>{"token":"...","items":[{...},{...}]}</pre>
+ *
+ * The token identifies the render. The page posts the text it holds with the hidden
+ * input of the store, and a patch is only written if the posted token is the one of
+ * the previous render, so the page is known to hold the rows the patch applies to.
+ * Otherwise, and for full page renders or fingerprints that have been evicted from
+ * the cache, all rows are written.
+ *
+ * Only flat stores whose key is defined in the structure are rendered as patch.
+ */
+public class StoreDelta {
+
+	/**
+	 * Context-param that sets the maximum number of fingerprinted stores kept per session
+	 */
+	public static final String SIZE_PARAM = "J4Fry_DELTA_STORES";
+
+	/**
+	 * Number of fingerprinted stores per session if the context-param is not set
+	 */
+	public static final int DEFAULT_SIZE = 16;
+
+	private static final String VIEW_KEY = StoreDelta.class.getName() + ":";
+	private static final String TOKEN_PREFIX = "{\"token\":\"";
+	private static final String SESSION_KEY = StoreDelta.class.getName();
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * @param component The hidden input that holds the store
+	 * @return Whether the store is rendered with delta="true"
+	 */
+	public static boolean isEnabled(UIComponent component) {
+		return "true".equals(String.valueOf(component.getAttributes().get("delta")));
+	}
+
+	/**
+	 * Write the store either as JSON array or as patch and remember the fingerprints of the rows
+	 *
+	 * @param plan The compiled structure of the store
+	 * @param context The FacesContext
+	 * @param component The hidden input that holds the store
+	 * @param itemVb The valueBinding defined by "var"
+	 * @param list The items
+	 * @param out The target of the JSON text
+	 * @return false if nothing was written because the store cannot be rendered as delta
+	 * @throws IOException If out cannot be written
+	 * @throws JSONException If a value is a non-finite number
+	 */
+	public static boolean write(StorePlan plan, FacesContext context, UIComponent component, ValueBinding itemVb,
+			Collection list, Appendable out) throws IOException, JSONException {
+		StorePlan.Column keyColumn = plan.getKeyColumn();
+		if (!isEnabled(component) || keyColumn == null || !plan.getChildren().isEmpty()) {
+			return false;
+		}
+		Map<String, Object> viewMap = context.getViewRoot().getViewMap();
+		String clientId = component.getClientId(context);
+		String viewKey = VIEW_KEY + clientId;
+		LruCache<String, Map<String, Long>> fingerprints = LruCache.getSessionInstance(context.getExternalContext(),
+				SESSION_KEY, SIZE_PARAM, DEFAULT_SIZE, true);
+		String previousToken = (String) viewMap.get(viewKey);
+		Map<String, Long> previous = previousToken == null ? null : fingerprints.get(previousToken);
+		Map<String, Long> current = new HashMap<String, Long>(list.size() * 4 / 3 + 1);
+		boolean patch = previous != null && context.getPartialViewContext().isAjaxRequest()
+			&& previousToken.equals(getPostedToken(context, clientId));
+		// a new token per render, a view state that is replayed never meets newer fingerprints
+		String token = UUID.randomUUID().toString();
+
+		StoreWriter writer = new StoreWriter(plan, context, component, itemVb);
+		writer.setKeyColumn(keyColumn);
+		StringBuilder row = new StringBuilder();
+		out.append(TOKEN_PREFIX);
+		out.append(token);
+		out.append(patch ? "\",\"upsert\":[" : "\",\"items\":[");
+		boolean start = true;
+		for (Object item : list) {
+			row.setLength(0);
+			writer.writeItem(item, row);
+			long fingerprint = fingerprint(row);
+			String key = writer.getKey() == null ? null : JSONObject.valueToString(writer.getKey());
+			if (key != null) {
+				current.put(key, fingerprint);
+			}
+			if (patch && key != null) {
+				Long previousFingerprint = previous.get(key);
+				if (previousFingerprint != null && previousFingerprint.longValue() == fingerprint) {
+					// unchanged since the last render
+					continue;
+				}
+			}
+			if (start) {
+				start = false;
+			} else {
+				out.append(',');
+			}
+			out.append(row);
+		}
+		out.append(']');
+		if (patch) {
+			out.append(",\"remove\":[");
+			start = true;
+			for (String key : previous.keySet()) {
+				if (!current.containsKey(key)) {
+					if (start) {
+						start = false;
+					} else {
+						out.append(',');
+					}
+					// the key is remembered as JSON text
+					out.append(key);
+				}
+			}
+			out.append(']');
+		}
+		out.append('}');
+		fingerprints.put(token, current);
+		if (previousToken != null) fingerprints.remove(previousToken);
+		viewMap.put(viewKey, token);
+		return true;
+	}
+
+	/**
+	 * @return The token of the render the page holds or null if the page didn't post one
+	 */
+	private static String getPostedToken(FacesContext context, String clientId) {
+		String posted = context.getExternalContext().getRequestParameterMap().get(clientId);
+		if (posted == null || !posted.startsWith(TOKEN_PREFIX)) return null;
+		int end = posted.indexOf('"', TOKEN_PREFIX.length());
+		return end < 0 ? null : posted.substring(TOKEN_PREFIX.length(), end);
+	}
+
+	/**
+	 * FNV-1a hash of the row's JSON text
+	 */
+	private static long fingerprint(CharSequence row) {
+		long hash = FNV_OFFSET;
+		for (int i = 0; i < row.length(); i++) {
+			char c = row.charAt(i);
+			hash ^= c & 0xff;
+			hash *= FNV_PRIME;
+			hash ^= c >>> 8;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+}
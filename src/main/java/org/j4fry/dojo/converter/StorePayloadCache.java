@@ -0,0 +1,211 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.faces.context.ExternalContext;
+import jakarta.faces.context.FacesContext;
+
+/**
+ * Application wide cache of serialized stores for reference data that is the same
+ * for all users, like a list of countries. A store with a cacheKey is serialized once
+ * and its JSON text is shared between all sessions until the store is rendered with
+ * another cacheVersion. A version that has been replaced is never cached again for
+ * the same key, so sessions that still render an old version don't evict the new one.
+ *
+ * The cache is bounded by the total length of the cached JSON texts, the context-param
+ * J4Fry_STORE_PAYLOAD_CACHE_CHARS sets the maximum number of characters. The least
+ * recently used stores are evicted first. The instance is kept in the application map,
+ * so the counters can be read through EL,
+ * e.g. #{applicationScope['org.j4fry.dojo.converter.StorePayloadCache'].hits}.
+ */
+public class StorePayloadCache {
+
+	/**
+	 * Context-param that sets the maximum number of cached characters
+	 */
+	public static final String SIZE_PARAM = "J4Fry_STORE_PAYLOAD_CACHE_CHARS";
+
+	/**
+	 * Number of cached characters if the context-param is not set
+	 */
+	public static final int DEFAULT_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * Number of replaced versions that are remembered per key
+	 */
+	private static final int MAX_SUPERSEDED = 16;
+
+	private static final String CACHE_KEY = StorePayloadCache.class.getName();
+	private static final Object LOCK = new Object();
+
+	private final long maxChars;
+	private final Map<String, Payload> map = new LinkedHashMap<String, Payload>(16, 0.75f, true);
+	private long chars;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxChars The maximum total length of the cached JSON texts
+	 */
+	public StorePayloadCache(long maxChars) {
+		if (maxChars < 1) throw new IllegalArgumentException("The size of a cache must be positive, not " + maxChars);
+		this.maxChars = maxChars;
+	}
+
+	/**
+	 * @param context The FacesContext
+	 * @param key The cacheKey, the caller has to add everything else that changes the JSON text
+	 * @param version The cacheVersion, may be null
+	 * @return The cached JSON text or null if nothing is cached for key and version
+	 */
+	public static String get(FacesContext context, String key, String version) {
+		return getInstance(context).getPayload(key, version);
+	}
+
+	/**
+	 * Cache the JSON text of a store. A different version that is cached for key is
+	 * replaced, unless version itself has been replaced before.
+	 *
+	 * @param context The FacesContext
+	 * @param key The cacheKey
+	 * @param version The cacheVersion, may be null
+	 * @param json The JSON text
+	 */
+	public static void put(FacesContext context, String key, String version, String json) {
+		getInstance(context).putPayload(key, version, json);
+	}
+
+	private static StorePayloadCache getInstance(FacesContext context) {
+		ExternalContext extContext = context.getExternalContext();
+		Map<String, Object> applicationMap = extContext.getApplicationMap();
+		StorePayloadCache cache = (StorePayloadCache) applicationMap.get(CACHE_KEY);
+		if (cache == null) {
+			synchronized (LOCK) {
+				cache = (StorePayloadCache) applicationMap.get(CACHE_KEY);
+				if (cache == null) {
+					cache = new StorePayloadCache(ContextParams.getIntParam(extContext, SIZE_PARAM, DEFAULT_SIZE));
+					applicationMap.put(CACHE_KEY, cache);
+				}
+			}
+		}
+		return cache;
+	}
+
+	private String getPayload(String key, String version) {
+		Payload payload;
+		synchronized (map) {
+			payload = map.get(key);
+		}
+		if (payload == null || !equals(payload.version, version)) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return payload.json;
+	}
+
+	private void putPayload(String key, String version, String json) {
+		synchronized (map) {
+			Payload previous = map.get(key);
+			Set<String> superseded = new LinkedHashSet<String>();
+			if (previous != null) {
+				if (previous.superseded.contains(version)) return;
+				superseded.addAll(previous.superseded);
+				if (!equals(previous.version, version)) superseded.add(previous.version);
+				if (superseded.size() > MAX_SUPERSEDED) {
+					Iterator<String> oldest = superseded.iterator();
+					oldest.next();
+					oldest.remove();
+				}
+				map.remove(key);
+				chars -= previous.json.length();
+			}
+			if (json.length() > maxChars) return;
+			map.put(key, new Payload(version, json, superseded));
+			chars += json.length();
+			for (Iterator<Payload> eldest = map.values().iterator(); chars > maxChars; ) {
+				chars -= eldest.next().json.length();
+				eldest.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private static boolean equals(String s1, String s2) {
+		return s1 == null ? s2 == null : s1.equals(s2);
+	}
+
+	public void clear() {
+		synchronized (map) {
+			map.clear();
+			chars = 0;
+		}
+	}
+
+	public int getSize() {
+		synchronized (map) {
+			return map.size();
+		}
+	}
+
+	public long getChars() {
+		synchronized (map) {
+			return chars;
+		}
+	}
+
+	public long getMaxChars() {
+		return maxChars;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public String toString() {
+		return "StorePayloadCache[size=" + getSize() + ", chars=" + getChars() + ", maxChars=" + maxChars
+			+ ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+	}
+
+	private static class Payload {
+
+		private final String version;
+		private final String json;
+		private final Set<String> superseded;
+
+		private Payload(String version, String json, Set<String> superseded) {
+			this.version = version;
+			this.json = json;
+			this.superseded = superseded;
+		}
+	}
+}
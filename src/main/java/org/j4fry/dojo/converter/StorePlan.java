@@ -0,0 +1,302 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.el.ValueBinding;
+
+import org.j4fry.dojo.validator.ValidatorFactory;
+import org.j4fry.json.JSONException;
+
+/**
+ * The compiled form of a store's structure attribute.
+ * A StorePlan is created once per structure String and key attribute and shared by all requests
+ * of the application through a {@link LruCache}. It holds the valueBindings of the columns and children,
+ * the numeric flags, factories for the converters and validators and the key column, so
+ * per request work is reduced to evaluating, converting and serializing.
+ */
+public final class StorePlan {
+
+	private static final String PLANS_KEY = StorePlan.class.getName();
+	private static final StorePlan EMPTY = new StorePlan(new LinkedHashMap<String, Column>(), null);
+
+	private final Map<String, Column> columns;
+	private final List<Column> attributes;
+	private final List<Column> children;
+	private final Column keyColumn;
+
+	private StorePlan(Map<String, Column> columns, String key) {
+		List<Column> myAttributes = new ArrayList<Column>();
+		List<Column> myChildren = new ArrayList<Column>();
+		for (Column column : columns.values()) {
+			if (column.isChildren()) {
+				myChildren.add(column);
+			} else {
+				myAttributes.add(column);
+			}
+		}
+		this.columns = Collections.unmodifiableMap(columns);
+		this.attributes = Collections.unmodifiableList(myAttributes);
+		this.children = Collections.unmodifiableList(myChildren);
+		Column column = key == null ? null : columns.get(key);
+		this.keyColumn = column == null || column.isChildren() ? null : column;
+	}
+
+	/**
+	 * Get the plan of a structure without key column, compile it on first use
+	 *
+	 * @param context The FacesContext
+	 * @param structure A JSON String defining the structure of the store
+	 * @return The plan
+	 * @throws JSONException If the structure cannot be parsed
+	 */
+	public static StorePlan get(FacesContext context, String structure) throws JSONException {
+		return get(context, structure, null);
+	}
+
+	/**
+	 * Get the plan of a structure and key, compile it on first use
+	 *
+	 * @param context The FacesContext
+	 * @param structure A JSON String defining the structure of the store
+	 * @param key The name of the key attribute, may be null
+	 * @return The plan
+	 * @throws JSONException If the structure cannot be parsed
+	 */
+	public static StorePlan get(FacesContext context, String structure, String key) throws JSONException {
+		if (structure == null) return EMPTY;
+		LruCache<Object, StorePlan> plans = LruCache.getInstance(context, PLANS_KEY);
+		Object cacheKey = key == null ? structure : Arrays.asList(structure, key);
+		StorePlan plan = plans.get(cacheKey);
+		if (plan == null) {
+			plan = plans.putIfAbsent(cacheKey, compile(context, structure, key));
+		}
+		return plan;
+	}
+
+	private static StorePlan compile(FacesContext context, String structure, String key) throws JSONException {
+		Map<String, String> valueBindingStrings = new LinkedHashMap<String, String>();
+		Map<String, String> childrenStrings = new LinkedHashMap<String, String>();
+		Map<String, Boolean> numeric = new LinkedHashMap<String, Boolean>();
+		Map<String, Map<String, String>> converterStrings = new LinkedHashMap<String, Map<String, String>>();
+		Map<String, List<Map<String, Object>>> validatorStrings = new LinkedHashMap<String, List<Map<String, Object>>>();
+		StoreConverterBase.tokenizeStructure(structure, context, valueBindingStrings, childrenStrings,
+				numeric, converterStrings, validatorStrings);
+
+		Map<String, Column> columns = new LinkedHashMap<String, Column>();
+		for (Map.Entry<String, String> entry : valueBindingStrings.entrySet()) {
+			columns.put(entry.getKey(), new Column(context, columns.size(), entry.getKey(), entry.getValue(), false,
+					numeric, converterStrings, validatorStrings));
+		}
+		for (Map.Entry<String, String> entry : childrenStrings.entrySet()) {
+			columns.put(entry.getKey(), new Column(context, columns.size(), entry.getKey(), entry.getValue(), true,
+					numeric, converterStrings, validatorStrings));
+		}
+		return new StorePlan(columns, key);
+	}
+
+	/**
+	 * @param name The name of an attribute of the store
+	 * @return The column or null if the structure doesn't define the attribute
+	 */
+	public Column getColumn(String name) {
+		return name == null ? null : columns.get(name);
+	}
+
+	/**
+	 * @return The column of the key attribute or null if the plan was compiled without key
+	 * or the structure doesn't define the key as attribute
+	 */
+	public Column getKeyColumn() {
+		return keyColumn;
+	}
+
+	/**
+	 * @return All columns in the order of the structure
+	 */
+	public Map<String, Column> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return The columns that hold values
+	 */
+	public List<Column> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * @return The columns that hold children of a hierarchical store
+	 */
+	public List<Column> getChildren() {
+		return children;
+	}
+
+	/**
+	 * A single column of the structure
+	 */
+	public static final class Column {
+
+		private final int index;
+		private final String name;
+		private final String expression;
+		private final ValueBinding valueBinding;
+		private final PropertyPath path;
+		private final boolean children;
+		private final boolean numeric;
+		private final ConverterFactory converterFactory;
+		private final List<ValidatorFactory> validatorFactories;
+
+		private Column(FacesContext context, int index, String name, String expression, boolean children,
+				Map<String, Boolean> numeric, Map<String, Map<String, String>> converterStrings,
+				Map<String, List<Map<String, Object>>> validatorStrings) {
+			this.index = index;
+			this.name = name;
+			this.expression = expression;
+			this.valueBinding = context.getApplication().createValueBinding(expression);
+			this.path = PropertyPath.compile(expression);
+			this.children = children;
+			this.numeric = Boolean.TRUE.equals(numeric.get(name));
+			this.converterFactory = new ConverterFactory(converterStrings.get(name));
+			List<ValidatorFactory> myValidatorFactories = new ArrayList<ValidatorFactory>();
+			if (validatorStrings.get(name) != null) {
+				for (Map<String, Object> validatorMap : validatorStrings.get(name)) {
+					myValidatorFactories.add(new ValidatorFactory(validatorMap));
+				}
+			}
+			this.validatorFactories = Collections.unmodifiableList(myValidatorFactories);
+		}
+
+		/**
+		 * @return The position of the column within the structure
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getExpression() {
+			return expression;
+		}
+
+		public ValueBinding getValueBinding() {
+			return valueBinding;
+		}
+
+		/**
+		 * Read the column's value of an item. Simple expressions that start with var
+		 * are read by their compiled {@link PropertyPath}, all others are evaluated by EL.
+		 * The caller must have set the item into var before.
+		 *
+		 * @param context The FacesContext
+		 * @param var The name of the variable that holds the item
+		 * @param item The current item
+		 * @return The value
+		 */
+		public Object getValue(FacesContext context, String var, Object item) {
+			Object value = getCompiledValue(var, item);
+			if (value != PropertyPath.UNRESOLVED) return value;
+			return valueBinding.getValue(context);
+		}
+
+		/**
+		 * Read the column's value of an item without EL
+		 *
+		 * @param var The name of the variable that holds the item
+		 * @param item The current item
+		 * @return The value or {@link PropertyPath#UNRESOLVED} if the value can only be read by EL
+		 */
+		public Object getCompiledValue(String var, Object item) {
+			if (!isCompiled(var)) return PropertyPath.UNRESOLVED;
+			return path.getValue(item);
+		}
+
+		/**
+		 * Write the column's value of an item. Simple expressions that start with var
+		 * are written by the setter of the {@link ModelClass} if the value fits the
+		 * property's type, all others are written and coerced by EL.
+		 * The caller must have set the item into var before.
+		 *
+		 * @param context The FacesContext
+		 * @param var The name of the variable that holds the item
+		 * @param item The current item
+		 * @param value The new value
+		 */
+		public void setValue(FacesContext context, String var, Object item, Object value) {
+			if (isCompiled(var) && path.setValue(item, value)) return;
+			valueBinding.setValue(context, value);
+		}
+
+		/**
+		 * @param context The FacesContext
+		 * @param var The name of the variable that holds the item
+		 * @param item The current item
+		 * @return Whether the column's value of the item cannot be written
+		 */
+		public boolean isReadOnly(FacesContext context, String var, Object item) {
+			if (isCompiled(var) && path.isWritable(item)) return false;
+			return valueBinding.isReadOnly(context);
+		}
+
+		/**
+		 * @param context The FacesContext
+		 * @param var The name of the variable that holds the item
+		 * @param item The current item
+		 * @return The type of the column's value, taken from the {@link ModelClass} if possible
+		 */
+		public Class getType(FacesContext context, String var, Object item) {
+			if (isCompiled(var)) {
+				Class type = path.getType(item);
+				if (type != null) return type;
+			}
+			return valueBinding.getType(context);
+		}
+
+		/**
+		 * @param var The name of the variable that holds the item
+		 * @return Whether the column's expression is compiled to a {@link PropertyPath} that starts with var
+		 */
+		public boolean isCompiled(String var) {
+			return path != null && path.getRoot().equals(var);
+		}
+
+		public boolean isChildren() {
+			return children;
+		}
+
+		public boolean isNumeric() {
+			return numeric;
+		}
+
+		public ConverterFactory getConverterFactory() {
+			return converterFactory;
+		}
+
+		public List<ValidatorFactory> getValidatorFactories() {
+			return validatorFactories;
+		}
+	}
+}
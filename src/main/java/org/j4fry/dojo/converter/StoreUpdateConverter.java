@@ -19,32 +19,23 @@
 package org.j4fry.dojo.converter;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Locale;
 import java.util.Map;
 
 import jakarta.faces.component.UIComponent;
 import jakarta.faces.context.FacesContext;
-import jakarta.faces.convert.Converter;
 import jakarta.faces.convert.ConverterException;
 import jakarta.faces.el.ValueBinding;
 
-import org.j4fry.json.JSFJSONObject;
-import org.j4fry.json.JSFJSONTokener;
-import org.j4fry.json.JSONArray;
-import org.j4fry.json.JSONException;
-import org.j4fry.json.JSONObject;
+import org.j4fry.dojo.validator.ColumnValidators;
 
 /**
  * Converts a JSON String that represents the changes that where made in 
- * the dataStore into a JSONObject.
+ * the dataStore into {@link StoreCommands}.
  * Converters that where set within a dataStore's structure attribute
  * are used to do the conversion.
  * 
- * For validation roundtrips the getAsString() method can convert the
- * JSONObject back to a JSON String. In case of a validation roundtrip
+ * For validation roundtrips the getAsString() method returns the
+ * JSON String the commands were decoded from. In case of a validation roundtrip
  * the changes must be restored into the dataStore using JavaScript.
  * 
  * {@link org.j4fry.dojo.beans.StoreUpdateMap} for responsible for 
@@ -54,32 +45,7 @@ public class StoreUpdateConverter extends StoreConverterBase {
 
 	public Object getAsObject(FacesContext context, UIComponent component, String update) throws ConverterException {
 		try {
-			// only start if there is something to update
-			if (update != null && update instanceof String 
-			&& ((String) update).length() > 0 && ((String) update).startsWith("[")) {
-				// transform json changes into HashMap
-				Map attributes = component.getAttributes();
-				String structure = (String) attributes.get("structure");
-				String var = (String) attributes.get("var");
-				String modelClassName = (String) attributes.get("modelClass");
-				Collection items = (Collection) attributes.get("items");
-		    	tokenizeStructure(structure, context, valueBindingStrings, null, null, converterStrings, null);
-		    	
-		    	// initialize the itemVb with either the modelClassName or with the first element of the List
-		    	// to enable converter type lookup for columns where a converter is not defined
-		    	ValueBinding itemVb = context.getApplication().createValueBinding("#{" + var + "}");
-				if (modelClassName != null) {
-					itemVb.setValue(context, Class.forName(modelClassName).getConstructor(null).newInstance(null));
-				} else if (items != null && items.size() > 0) {
-					itemVb.setValue(context, items.iterator().next());
-				}
-				
-		    	// convert the String to a JSONObject 
-				return new JSONArray(new JSFJSONTokener(context, component, structure, update, valueBindingStrings,
-							converterStrings, valueBindings, converters));
-			} else {
-				return null;
-			}
+			return decode(context, component, update, "true".equals(String.valueOf(component.getAttributes().get("fusedValidation"))));
 		} catch (Throwable t) {
 			t.printStackTrace(System.out);
 			if (t instanceof ConverterException) {
@@ -90,8 +56,52 @@ public class StoreUpdateConverter extends StoreConverterBase {
 		}
 	}
 
+	/**
+	 * @param context The FacesContext
+	 * @param component The hidden input that holds the store's updates
+	 * @param update The JSON text of the updates
+	 * @param validate Whether to validate each leaf as soon as it is converted
+	 * @return The decoded updates or null if there is nothing to update
+	 * @throws Exception If the updates cannot be decoded or converted
+	 */
+	static StoreCommands decode(FacesContext context, UIComponent component, String update, boolean validate) 
+			throws Exception {
+		// only start if there is something to update
+		if (update == null || update.length() == 0 || !update.startsWith("[")) {
+			return null;
+		}
+		Map attributes = component.getAttributes();
+		String structure = (String) attributes.get("structure");
+		String var = (String) attributes.get("var");
+		String modelClassName = (String) attributes.get("modelClass");
+		Collection items = (Collection) attributes.get("items");
+		StorePlan plan = StorePlan.get(context, structure, (String) attributes.get("key"));
+
+		// initialize the itemVb with either the modelClassName or with the first element of the List
+		// to enable converter type lookup for columns where a converter is not defined
+		ValueBinding itemVb = context.getApplication().createValueBinding("#{" + var + "}");
+		Object item = null;
+		if (modelClassName != null) {
+			item = ModelClass.forName(context, modelClassName).newInstance();
+		} else if (items != null && items.size() > 0) {
+			item = items.iterator().next();
+		}
+		if (item != null) {
+			itemVb.setValue(context, item);
+		}
+
+		// decode the String into typed commands 
+		ColumnValidators validators = null;
+		if (validate) {
+			// validate each leaf as soon as it is converted, StoreUpdateValidator reports the messages
+			validators = new ColumnValidators(plan, component);
+		}
+		return new StoreUpdateDecoder(context, component, update, 
+				new ColumnConverters(plan, var, item), validators).decode();
+	}
+
 	public String getAsString(FacesContext context, UIComponent component, Object value) {
-		if (value != null && value instanceof JSONArray) {
+		if (value != null && value instanceof StoreCommands) {
 			return value.toString();
 		} else {
 			return null;
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.faces.application.FacesMessage;
+import jakarta.faces.component.UIComponent;
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.validator.Validator;
+import jakarta.faces.validator.ValidatorException;
+
+import org.j4fry.dojo.validator.ColumnValidators;
+
+import org.j4fry.json.JSFJSONObject;
+import org.j4fry.json.JSFJSONTokener;
+import org.j4fry.json.JSONException;
+
+/**
+ * Decodes the JSON text with the changes of a dataStore in a single pass into
+ * {@link StoreCommands}. Leafs are converted by the converters of their columns while
+ * they are read, so no JSONArray and JSONObject tree is built in between:
+ * <pre>[{"insert":{"id":["4"],"name":["x"]}},{"set":{"2":{"name":["y"]}}},{"delete":"3"}]</pre>
+ * Leafs are encoded as one-element-arrays by dojo stores, a one-element-array that holds
+ * a String is converted to its element like {@link JSFJSONObject} does.
+ *
+ * If the decoder is given the validators of the columns, every leaf is validated right
+ * after it was converted. Failed validations don't stop the decoding, their messages
+ * are collected in {@link StoreCommands#getValidationMessages()} and reported by
+ * {@link org.j4fry.dojo.validator.StoreUpdateValidator} in the validation phase.
+ */
+public class StoreUpdateDecoder extends JSFJSONTokener {
+
+	private final FacesContext context;
+	private final UIComponent component;
+	private final ColumnConverters converters;
+	private final String source;
+	private final ColumnValidators validators;
+	private final List<FacesMessage> validationMessages;
+
+	/**
+	 * @param context The FacesContext
+	 * @param component The hidden input that holds the store's updates
+	 * @param source The JSON text
+	 * @param converters The converters of the store's columns
+	 */
+	public StoreUpdateDecoder(FacesContext context, UIComponent component,
+			String source, ColumnConverters converters) throws JSONException {
+		this(context, component, source, converters, null);
+	}
+
+	/**
+	 * @param context The FacesContext
+	 * @param component The hidden input that holds the store's updates
+	 * @param source The JSON text
+	 * @param converters The converters of the store's columns
+	 * @param validators The validators of the store's columns, null to leave validation to
+	 * the validation phase
+	 */
+	public StoreUpdateDecoder(FacesContext context, UIComponent component,
+			String source, ColumnConverters converters, ColumnValidators validators) throws JSONException {
+		super(context, component, source, converters);
+		this.context = context;
+		this.component = component;
+		this.converters = converters;
+		this.source = source;
+		this.validators = validators;
+		this.validationMessages = validators == null ? null : new ArrayList<FacesMessage>();
+	}
+
+	/**
+	 * @return The changes in the order they were made
+	 * @throws JSONException If the JSON text is malformed
+	 */
+	public StoreCommands decode() throws JSONException {
+		StoreCommands commands = new StoreCommands(source);
+		commands.setValidationMessages(validationMessages);
+		if (nextClean() != '[') {
+			throw syntaxError("The changes of a store must begin with '['");
+		}
+		if (nextClean() == ']') {
+			return commands;
+		}
+		back();
+		for (;;) {
+			if (nextClean() == ',') {
+				// tolerate empty elements like JSONArray does
+				back();
+			} else {
+				back();
+				decodeUpdate(commands);
+			}
+			switch (nextClean()) {
+			case ';':
+			case ',':
+				if (nextClean() == ']') {
+					return commands;
+				}
+				back();
+				break;
+			case ']':
+				return commands;
+			default:
+				throw syntaxError("Expected a ',' or ']'");
+			}
+		}
+	}
+
+	/**
+	 * Decode a single update, an update holds an insert, a set and a delete at most
+	 * and they are applied in this order
+	 */
+	private void decodeUpdate(StoreCommands commands) throws JSONException {
+		if (nextClean() != '{') {
+			throw syntaxError("An update must begin with '{'");
+		}
+		StoreCommand insert = null;
+		List<StoreCommand> sets = null;
+		StoreCommand delete = null;
+		if (nextClean() != '}') {
+			back();
+			do {
+				String type = nextKey();
+				if ("insert".equals(type)) {
+					insert = new StoreCommand.Insert(nextItem());
+				} else if ("set".equals(type)) {
+					sets = new ArrayList<StoreCommand>();
+					if (nextClean() != '{') {
+						throw syntaxError("A set must begin with '{'");
+					}
+					if (nextClean() != '}') {
+						back();
+						do {
+							String key = nextKey();
+							sets.add(new StoreCommand.Set(key, nextItem()));
+						} while (nextSeparator());
+					}
+				} else if ("delete".equals(type)) {
+					Object key = nextValue();
+					delete = key == null ? null : new StoreCommand.Delete(key.toString());
+				} else {
+					// unknown update type, skip it
+					nextValue();
+				}
+			} while (nextSeparator());
+		}
+		if (insert != null) commands.add(insert);
+		if (sets != null) commands.addAll(sets);
+		if (delete != null) commands.add(delete);
+	}
+
+	/**
+	 * Decode the attributes of an item, leafs are converted
+	 */
+	private StoreCommand.Item nextItem() throws JSONException {
+		if (nextClean() != '{') {
+			throw syntaxError("An item must begin with '{'");
+		}
+		StoreCommand.Item item = new StoreCommand.Item();
+		if (nextClean() == '}') {
+			return item;
+		}
+		back();
+		do {
+			String name = nextKey();
+			Object value = nextElement();
+			if (value instanceof List && !((List) value).isEmpty() && ((List) value).get(0) instanceof String) {
+				value = ((List) value).get(0);
+			}
+			if (value instanceof String) {
+				// reached leaf, do conversion
+				value = JSFJSONObject.convert(context, component, converters, name, (String) value);
+			}
+			if (validators != null) {
+				validate(name, value);
+			}
+			item.add(name, value);
+		} while (nextSeparator());
+		return item;
+	}
+
+	/**
+	 * @return An Item for objects, a List for arrays or the unconverted leaf
+	 */
+	private Object nextElement() throws JSONException {
+		char c = nextClean();
+		back();
+		if (c == '{') {
+			return nextItem();
+		} else if (c == '[' || c == '(') {
+			return nextList();
+		}
+		return nextValue();
+	}
+
+	private List<Object> nextList() throws JSONException {
+		char q = nextClean();
+		char end = q == '(' ? ')' : ']';
+		List<Object> list = new ArrayList<Object>(1);
+		if (nextClean() == end) {
+			return list;
+		}
+		back();
+		for (;;) {
+			if (nextClean() == ',') {
+				back();
+				list.add(null);
+			} else {
+				back();
+				list.add(nextElement());
+			}
+			char c = nextClean();
+			switch (c) {
+			case ';':
+			case ',':
+				if (nextClean() == end) {
+					return list;
+				}
+				back();
+				break;
+			case ']':
+			case ')':
+				if (c != end) {
+					throw syntaxError("Expected a '" + end + "'");
+				}
+				return list;
+			default:
+				throw syntaxError("Expected a ',' or ']'");
+			}
+		}
+	}
+
+	/**
+	 * Read a key and the ':' that follows it, '=' and '=>' are tolerated
+	 */
+	private String nextKey() throws JSONException {
+		char c = nextClean();
+		if (c == 0) {
+			throw syntaxError("An object must end with '}'");
+		}
+		back();
+		String key = String.valueOf(nextValue());
+		c = nextClean();
+		if (c == '=') {
+			if (next() != '>') {
+				back();
+			}
+		} else if (c != ':') {
+			throw syntaxError("Expected a ':' after a key");
+		}
+		return key;
+	}
+
+	/**
+	 * @return true if another pair follows, false if the object ends
+	 */
+	private boolean nextSeparator() throws JSONException {
+		switch (nextClean()) {
+		case ';':
+		case ',':
+			if (nextClean() == '}') {
+				return false;
+			}
+			back();
+			return true;
+		case '}':
+			return false;
+		default:
+			throw syntaxError("Expected a ',' or '}'");
+		}
+	}
+
+	/**
+	 * Validate an attribute of an item, nested items were validated while they were decoded
+	 */
+	private void validate(String name, Object value) {
+		if (value instanceof StoreCommand.Item) return;
+		if (value instanceof List) {
+			// use the same name again, because leaf data are encapsulated in one-element-arrays
+			for (Object element : (List) value) {
+				validate(name, element);
+			}
+			return;
+		}
+		StorePlan.Column column = converters.getPlan().getColumn(name);
+		if (column == null) return;
+		Validator[] myValidators = validators.get(context, column);
+		UIComponent[] components = validators.getComponents(context, column);
+		for (int i = 0; i < myValidators.length; i++) {
+			if (myValidators[i] == null) continue;
+			try {
+				myValidators[i].validate(context, components[i], value);
+			} catch (ValidatorException e) {
+				if (e.getFacesMessages() != null) {
+					validationMessages.addAll(e.getFacesMessages());
+				} else if (e.getFacesMessage() != null) {
+					validationMessages.add(e.getFacesMessage());
+				}
+			}
+		}
+	}
+}
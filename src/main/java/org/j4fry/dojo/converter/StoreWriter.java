@@ -0,0 +1,250 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.converter;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import jakarta.faces.component.UIComponent;
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.convert.Converter;
+import jakarta.faces.convert.ConverterException;
+import jakarta.faces.el.ValueBinding;
+
+import org.j4fry.json.JSONException;
+import org.j4fry.json.JSONObject;
+
+/**
+ * Streams the items of a store as JSON text to an {@link Appendable}.
+ * The items are walked once and every token is written as soon as it is known,
+ * no intermediate {@link org.j4fry.json.JSONArray} or {@link JSONObject} tree is built.
+ * The output is the same as the one of the former JSONArray based implementation
+ * of {@link StoreConverter}: non numeric columns pass the converters defined in
+ * the structure, children attributes are followed recursively. The attributes
+ * are written in the order of the {@link StorePlan}.
+ */
+public class StoreWriter {
+
+	private StorePlan plan;
+	private ColumnConverters converters;
+	private FacesContext context;
+	private UIComponent component;
+	private ValueBinding itemVb;
+	private String var;
+	private StorePlan.Column keyColumn;
+	private Object key;
+
+	/**
+	 * @param plan The compiled structure of the store
+	 * @param context The FacesContext
+	 * @param component The hidden input that holds the store
+	 * @param itemVb The valueBinding defined by "var"
+	 */
+	public StoreWriter(StorePlan plan, FacesContext context, UIComponent component, ValueBinding itemVb) {
+		this.plan = plan;
+		this.converters = new ColumnConverters(plan);
+		this.context = context;
+		this.component = component;
+		this.itemVb = itemVb;
+		this.var = (String) component.getAttributes().get("var");
+	}
+
+	/**
+	 * Create a writer that doesn't bind the items to "var". It reads the items through
+	 * compiled expressions only and is used by {@link ParallelStoreWriter} for chunks
+	 * that are written outside of the request thread. The converters must have been
+	 * looked up on the request thread and be safe for concurrent use. If a value
+	 * cannot be read without EL, a converter is missing or a conversion fails a
+	 * {@link SerialPathException} is thrown.
+	 *
+	 * @param plan The compiled structure of the store
+	 * @param converters The resolved converters, shared by all chunks
+	 * @param context The request's FacesContext, only passed to the converters
+	 * @param component The hidden input that holds the store, only passed to the converters
+	 * @param var The name of the variable the columns' expressions start with
+	 */
+	StoreWriter(StorePlan plan, ColumnConverters converters, FacesContext context, UIComponent component, String var) {
+		this.plan = plan;
+		this.converters = converters;
+		this.context = context;
+		this.component = component;
+		this.var = var;
+	}
+
+	/**
+	 * Write a Collection of items as JSON array.
+	 *
+	 * @param list The items
+	 * @param out The target of the JSON text
+	 * @throws IOException If out cannot be written
+	 * @throws JSONException If a value is a non-finite number
+	 */
+	public void write(Collection list, Appendable out) throws IOException, JSONException {
+		out.append('[');
+		writeItems(list, out);
+		out.append(']');
+	}
+
+	/**
+	 * Write items separated by commas without the enclosing brackets
+	 */
+	void writeItems(Collection list, Appendable out) throws IOException, JSONException {
+		boolean start = true;
+		for (Object item : list) {
+			if (start) {
+				start = false;
+			} else {
+				out.append(',');
+			}
+			writeItem(item, out);
+		}
+	}
+
+	/**
+	 * Remember the value that is written for a column, so it can be read by {@link #getKey()}
+	 * after an item was written
+	 *
+	 * @param keyColumn The column that holds the item's identity
+	 */
+	void setKeyColumn(StorePlan.Column keyColumn) {
+		this.keyColumn = keyColumn;
+	}
+
+	/**
+	 * @return The value that was written for the key column by the last call of {@link #writeItem(Object, Appendable)}
+	 */
+	Object getKey() {
+		return key;
+	}
+
+	void writeItem(Object item, Appendable out) throws IOException, JSONException {
+		bind(item);
+		out.append('{');
+		boolean start = true;
+		key = null;
+
+		// iterate over the structure's columns to write the attributes
+		for (StorePlan.Column column : plan.getAttributes()) {
+			Object jsonValue = getJsonValue(column, item);
+			if (column == keyColumn) {
+				key = jsonValue;
+			}
+			// null values are left out like JSONObject.put does
+			if (jsonValue != null) {
+				start = writeKey(column.getName(), start, out);
+				JSONObject.writeValue(out, jsonValue);
+			}
+		}
+
+		// recurse for children
+		for (StorePlan.Column column : plan.getChildren()) {
+			Object childList = read(column, item);
+			if (childList instanceof Collection) {
+				start = writeKey(column.getName(), start, out);
+				write((Collection) childList, out);
+				// the recursion moved "var" to the children, restore it for the next children attribute
+				if (itemVb != null) {
+					itemVb.setValue(context, item);
+				}
+			}
+		}
+		out.append('}');
+	}
+
+	/**
+	 * Put the next item into the valueBinding defined by "var", compiled columns read
+	 * the item directly, the others evaluate their expressions by EL
+	 */
+	void bind(Object item) {
+		if (itemVb != null) {
+			itemVb.setValue(context, item);
+		}
+	}
+
+	/**
+	 * Read and convert the value of an attribute column for the item that was passed to {@link #bind(Object)}
+	 *
+	 * @return The value as it is written to the JSON text or null if the attribute is left out
+	 * @throws JSONException If the value is a non-finite number
+	 */
+	Object getJsonValue(StorePlan.Column column, Object item) throws JSONException {
+		return toJsonValue(column, read(column, item));
+	}
+
+	/**
+	 * Convert a value of an attribute column like {@link #getJsonValue(StorePlan.Column, Object)} does
+	 *
+	 * @return The value as it is written to the JSON text or null if the attribute is left out
+	 * @throws JSONException If the value is a non-finite number
+	 */
+	Object toJsonValue(StorePlan.Column column, Object value) throws JSONException {
+		Object jsonValue = value;
+		// Only look for a converter for non null values. Booleans are written as JSON literals.
+		if (jsonValue != null && !(jsonValue instanceof Boolean) && !column.isNumeric()) {
+			if (itemVb == null && !converters.isResolved(column)) {
+				// converters are looked up on the request thread only
+				throw new SerialPathException("The converter of column " + column.getName() + " is not resolved", null);
+			}
+			Converter converter = converters.get(context, column);
+			if (converter != null) {
+				try {
+					jsonValue = converter.getAsString(context, component, jsonValue);
+				} catch (ConverterException e) {
+					// the serial path reports the failure on the request thread
+					if (itemVb == null) throw new SerialPathException("The column " + column.getName() + " cannot be converted", e);
+					throw e;
+				}
+			}
+		}
+		if (jsonValue != null) {
+			JSONObject.testValidity(jsonValue);
+		}
+		return jsonValue;
+	}
+
+	private Object read(StorePlan.Column column, Object item) {
+		if (itemVb != null) {
+			return column.getValue(context, var, item);
+		}
+		Object value = column.getCompiledValue(var, item);
+		if (value == PropertyPath.UNRESOLVED) {
+			throw new SerialPathException("The column " + column.getName() + " cannot be read without EL", null);
+		}
+		return value;
+	}
+
+	private boolean writeKey(String key, boolean start, Appendable out) throws IOException {
+		if (!start) {
+			out.append(',');
+		}
+		JSONObject.quote(key, out);
+		out.append(':');
+		return false;
+	}
+
+	/**
+	 * Thrown by a writer without "var" binding if an item has to be written by the
+	 * serial path on the request thread
+	 */
+	static class SerialPathException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		SerialPathException(String message, Throwable cause) {
+			super(message, cause);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.listener;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jakarta.faces.FacesException;
+import jakarta.faces.application.ViewHandler;
+import jakarta.faces.component.UIViewRoot;
+import jakarta.faces.context.ExternalContext;
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.event.PhaseEvent;
+import jakarta.faces.event.PhaseId;
+import jakarta.faces.event.PhaseListener;
+import jakarta.servlet.http.HttpServletRequest;
+
+import org.j4fry.dojo.converter.PagedStore;
+import org.j4fry.json.JSONException;
+
+/**
+ * Serves the slices of stores with paging="true".
+ * A dojox.data.QueryReadStore sends start, count and sort as request parameters and
+ * receives {identifier, numRows, items}. A dojox.data.JsonRestStore sends a Range header
+ * and optionally sort(+attribute) in the query string and receives a plain array together
+ * with a Content-Range header.
+ * The request is answered before the view is restored, the lifecycle is not executed.
+ */
+public class StorePagingListener implements PhaseListener {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Pattern RANGE = Pattern.compile("items=(\\d+)-(\\d+)");
+	private static final Pattern REST_SORT = Pattern.compile("sort\\(([+-]?)([^)]+)\\)");
+
+	public PhaseId getPhaseId() {
+		return PhaseId.RESTORE_VIEW;
+	}
+
+	public void beforePhase(PhaseEvent event) {
+		FacesContext context = event.getFacesContext();
+		ExternalContext extContext = context.getExternalContext();
+		Map<String, String> params = extContext.getRequestParameterMap();
+		String clientId = params.get(PagedStore.STORE_PARAM);
+		String viewId = params.get(PagedStore.VIEW_PARAM);
+		if (clientId == null || viewId == null) return;
+		PagedStore store = PagedStore.lookup(context, viewId, clientId);
+		if (store == null) return;
+
+		// converters need a view root to determine the locale
+		ViewHandler viewHandler = context.getApplication().getViewHandler();
+		UIViewRoot viewRoot = new UIViewRoot();
+		viewRoot.setViewId(viewId);
+		viewRoot.setLocale(viewHandler.calculateLocale(context));
+		viewRoot.setRenderKitId(viewHandler.calculateRenderKitId(context));
+		context.setViewRoot(viewRoot);
+
+		try {
+			extContext.setResponseContentType("application/json");
+			extContext.setResponseCharacterEncoding("UTF-8");
+			Writer writer = extContext.getResponseOutputWriter();
+			String range = extContext.getRequestHeaderMap().get("Range");
+			Matcher rangeMatcher = range == null ? null : RANGE.matcher(range);
+			if (rangeMatcher != null && rangeMatcher.find()) {
+				// JsonRestStore
+				// bounds too large for a long lie behind the end of any store
+				long start = parseLong(rangeMatcher.group(1), Long.MAX_VALUE);
+				long end = Math.min(parseLong(rangeMatcher.group(2), Long.MAX_VALUE), store.size() - 1);
+				String sort = null;
+				String queryString = null;
+				if (extContext.getRequest() instanceof HttpServletRequest) {
+					queryString = ((HttpServletRequest) extContext.getRequest()).getQueryString();
+				}
+				Matcher sortMatcher = queryString == null ? null : REST_SORT.matcher(queryString);
+				if (sortMatcher != null && sortMatcher.find()) {
+					sort = sortMatcher.group(1) + sortMatcher.group(2);
+				}
+				if (end < start) {
+					// empty store or a range behind its end
+					extContext.setResponseHeader("Content-Range", "items */" + store.size());
+					writer.write("[]");
+				} else {
+					extContext.setResponseHeader("Content-Range", "items " + start + "-" + end + "/" + store.size());
+					store.write(context, (int) start, (int) (end - start + 1), sort, writer);
+				}
+			} else {
+				// QueryReadStore
+				int start = parseInt(params.get("start"), 0);
+				int count = parseInt(params.get("count"), -1);
+				store.writeQueryResult(context, start, count, params.get("sort"), writer);
+			}
+			writer.flush();
+		} catch (IOException e) {
+			throw new FacesException(e);
+		} catch (JSONException e) {
+			throw new FacesException(e);
+		}
+		context.responseComplete();
+	}
+
+	public void afterPhase(PhaseEvent event) {}
+
+	private static long parseLong(String value, long defaultValue) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	private static int parseInt(String value, int defaultValue) {
+		if (value == null || value.length() == 0) return defaultValue;
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.renderer;
+
+import java.io.IOException;
+import java.util.Map;
+
+import jakarta.faces.component.EditableValueHolder;
+import jakarta.faces.component.UIComponent;
+import jakarta.faces.component.ValueHolder;
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.context.ResponseWriter;
+import jakarta.faces.convert.Converter;
+import jakarta.faces.convert.ConverterException;
+import jakarta.faces.render.Renderer;
+
+import org.j4fry.dojo.converter.StoreConverter;
+import org.j4fry.dojo.converter.StoreDelta;
+
+/**
+ * Renders the hidden input that holds a dataStore's items.
+ * Unlike the standard hidden renderer the value is not built as a String
+ * first: a {@link StoreConverter} streams the JSON text through an HTML
+ * attribute escaping filter directly to the ResponseWriter.
+ */
+public class StoreRenderer extends Renderer {
+
+	public void decode(FacesContext context, UIComponent component) {
+		String clientId = component.getClientId(context);
+		Map<String, String> params = context.getExternalContext().getRequestParameterMap();
+		if (params.containsKey(clientId)) {
+			((EditableValueHolder) component).setSubmittedValue(params.get(clientId));
+		}
+	}
+
+	public Object getConvertedValue(FacesContext context, UIComponent component, Object submittedValue)
+			throws ConverterException {
+		Converter converter = ((ValueHolder) component).getConverter();
+		if (converter == null) {
+			return submittedValue;
+		}
+		return converter.getAsObject(context, component, (String) submittedValue);
+	}
+
+	public void encodeEnd(FacesContext context, UIComponent component) throws IOException {
+		ResponseWriter writer = context.getResponseWriter();
+		HtmlAttributeAppender attribute = new HtmlAttributeAppender(writer);
+		String clientId = component.getClientId(context);
+		writer.write("<input type=\"hidden\" id=\"");
+		attribute.append(clientId);
+		writer.write("\" name=\"");
+		attribute.append(clientId);
+		writer.write("\" value=\"");
+		Object submittedValue = component instanceof EditableValueHolder 
+				? ((EditableValueHolder) component).getSubmittedValue() : null;
+		Converter converter = ((ValueHolder) component).getConverter();
+		if (submittedValue != null && !StoreDelta.isEnabled(component)) {
+			// conversion or validation roundtrip: return what was submitted,
+			// a delta store is rendered again because the submitted value may be a patch
+			attribute.append(submittedValue.toString());
+		} else if (converter instanceof StoreConverter) {
+			((StoreConverter) converter).writeStore(context, component, ((ValueHolder) component).getValue(), attribute);
+		} else {
+			Object value = ((ValueHolder) component).getValue();
+			if (converter != null) {
+				value = converter.getAsString(context, component, value);
+			}
+			if (value != null) {
+				attribute.append(value.toString());
+			}
+		}
+		writer.write("\" />");
+	}
+
+	/**
+	 * Escapes the characters that are not allowed inside a double quoted HTML attribute
+	 */
+	private static class HtmlAttributeAppender implements Appendable {
+
+		private ResponseWriter writer;
+
+		private HtmlAttributeAppender(ResponseWriter writer) {
+			this.writer = writer;
+		}
+
+		public Appendable append(CharSequence csq) throws IOException {
+			return append(csq, 0, csq.length());
+		}
+
+		public Appendable append(CharSequence csq, int start, int end) throws IOException {
+			int run = start;
+			for (int i = start; i < end; i++) {
+				String entity = entity(csq.charAt(i));
+				if (entity != null) {
+					if (run < i) {
+						writer.append(csq, run, i);
+					}
+					writer.write(entity);
+					run = i + 1;
+				}
+			}
+			if (run < end) {
+				writer.append(csq, run, end);
+			}
+			return this;
+		}
+
+		public Appendable append(char c) throws IOException {
+			String entity = entity(c);
+			if (entity == null) {
+				writer.write(c);
+			} else {
+				writer.write(entity);
+			}
+			return this;
+		}
+
+		private static String entity(char c) {
+			switch (c) {
+			case '&':
+				return "&amp;";
+			case '"':
+				return "&quot;";
+			case '<':
+				return "&lt;";
+			case '>':
+				return "&gt;";
+			default:
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.validator;
+
+import java.util.List;
+
+import jakarta.faces.component.UIComponent;
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.validator.Validator;
+
+import org.j4fry.dojo.converter.LabeledComponent;
+import org.j4fry.dojo.converter.StorePlan;
+
+/**
+ * Holds the validators of a {@link StorePlan}'s columns for a single validation.
+ * Validators are created lazily by the column's {@link ValidatorFactory}s and
+ * reused for all items. Each validator is called with a {@link LabeledComponent}
+ * that answers the label of its definition.
+ */
+public class ColumnValidators {
+
+	private static final Validator[] NONE = new Validator[0];
+	private static final UIComponent[] NO_COMPONENTS = new UIComponent[0];
+
+	private final StorePlan plan;
+	private final UIComponent component;
+	private final Validator[][] validators;
+	private final UIComponent[][] labeled;
+
+	/**
+	 * @param plan The compiled structure
+	 * @param component The hidden input that holds the store's updates
+	 */
+	public ColumnValidators(StorePlan plan, UIComponent component) {
+		this.plan = plan;
+		this.component = component;
+		this.validators = new Validator[plan.getColumns().size()][];
+		this.labeled = new UIComponent[validators.length][];
+	}
+
+	public StorePlan getPlan() {
+		return plan;
+	}
+
+	/**
+	 * @param context The FacesContext
+	 * @param column A column of the plan
+	 * @return The column's validators in the order of its factories, an element is null
+	 * if the factory defines no id
+	 */
+	public Validator[] get(FacesContext context, StorePlan.Column column) {
+		int index = column.getIndex();
+		Validator[] myValidators = validators[index];
+		if (myValidators == null) {
+			List<ValidatorFactory> factories = column.getValidatorFactories();
+			UIComponent[] myComponents;
+			if (factories.isEmpty()) {
+				myValidators = NONE;
+				myComponents = NO_COMPONENTS;
+			} else {
+				myValidators = new Validator[factories.size()];
+				myComponents = new UIComponent[myValidators.length];
+				for (int i = 0; i < myValidators.length; i++) {
+					myValidators[i] = factories.get(i).create(context);
+					myComponents[i] = LabeledComponent.wrap(component, factories.get(i).getLabel());
+				}
+			}
+			validators[index] = myValidators;
+			labeled[index] = myComponents;
+		}
+		return myValidators;
+	}
+
+	/**
+	 * @param context The FacesContext
+	 * @param column A column of the plan
+	 * @return The components to pass to the column's validators, they answer the validators' labels
+	 */
+	public UIComponent[] getComponents(FacesContext context, StorePlan.Column column) {
+		get(context, column);
+		return labeled[column.getIndex()];
+	}
+}
@@ -18,62 +18,49 @@
  */
 package org.j4fry.dojo.validator;
 
-import java.beans.BeanInfo;
-import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.text.ParseException;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
-import java.util.Map;
 
-import jakarta.faces.FacesException;
 import jakarta.faces.application.FacesMessage;
 import jakarta.faces.component.UIComponent;
 import jakarta.faces.context.FacesContext;
-import jakarta.faces.convert.ConverterException;
-import jakarta.faces.el.ValueBinding;
 import jakarta.faces.validator.Validator;
 import jakarta.faces.validator.ValidatorException;
 
-import org.j4fry.dojo.converter.StoreConverterBase;
-import org.j4fry.json.JSFJSONObject;
-import org.j4fry.json.JSONArray;
-import org.j4fry.json.JSONException;
-import org.j4fry.json.JSONObject;
+import org.j4fry.dojo.converter.StoreCommand;
+import org.j4fry.dojo.converter.StoreCommands;
+import org.j4fry.dojo.converter.StorePlan;
 
 /**
  * This validator is used on the hidden updates of a dataStore
  * It validates store updates by callings validators defined in the structure attribute 
+ * 
+ * With fusedValidation="true" the leafs are already validated by {@link org.j4fry.dojo.converter.StoreUpdateDecoder}
+ * while they are converted, in this case the validator only reports the collected messages.
  */
 public class StoreUpdateValidator implements Validator {
 
 	/**
 	 * @param context The FacesContext
 	 * @param component The hidden input that contains the store's updates
-	 * @param value The JSON Object with the updates
+	 * @param value The decoded store updates
 	 */
 	public void validate(FacesContext context, UIComponent component, Object value)
 			throws ValidatorException {
-		if (value == null) return;
-		Map componentAttributes = component.getAttributes();
-		String structure = (String) componentAttributes.get("structure");
-		Map<String, List<Map<String, Object>>> validatorStrings = new HashMap<String, List<Map<String, Object>>>();
-		Map<String, List<Validator>> validators = new HashMap<String, List<Validator>>();
+		if (!(value instanceof StoreCommands)) return;
+		StoreCommands commands = (StoreCommands) value;
+		if (commands.isValidated()) {
+			// fusedValidation="true": the leafs were validated while they were decoded
+			if (!commands.getValidationMessages().isEmpty()) {
+				throw new ValidatorException(commands.getValidationMessages());
+			}
+			return;
+		}
+		String structure = (String) component.getAttributes().get("structure");
 		try {
-			// determine the defined validators
-			StoreConverterBase.tokenizeStructure(structure, context, null, null, null, null, validatorStrings);
+			// the compiled structure holds the defined validators
+			StorePlan plan = StorePlan.get(context, structure, (String) component.getAttributes().get("key"));
 			// invoke recursive validation
-			validate(context, component, null, value, validatorStrings, validators, 0);
+			validate(context, component, commands, new ColumnValidators(plan, component));
 		} catch (Throwable t) {
 			if (t instanceof ValidatorException) {
 				throw (ValidatorException) t;
@@ -85,120 +72,54 @@ public class StoreUpdateValidator implements Validator {
 	}
 
 	/**
-	 * Recursively step through the tree and perform validation on the leafs
-	 * Only start validation from depth 3, the first two levels contain an Array of
-	 * all updates and the update type.
+	 * Validate the leafs of all inserted and changed items
 	 * 
 	 * @param context The FacesContext
 	 * @param component The hidden input that contains the store's updates
-	 * @param key The key of the JSON object to validate
-	 * @param value The JSON object to validate
-	 * @param validatorStrings Definition of the validators defined in the store's structure
-	 * @param validators Instances of the validators
-	 * @param depth Recursion level
-	 * @throws JSONException
+	 * @param commands The decoded store updates
+	 * @param validators The validators of the store's columns
 	 */
-	private void validate(FacesContext context, UIComponent component,
-			String key, Object value,
-			Map<String, List<Map<String, Object>>> validatorStrings,
-			Map<String, List<Validator>> validators, int depth) throws JSONException {
-		depth++;
-		if (value instanceof JSONObject) {
-			// simply recurse
-			JSONObject jsonValue = (JSONObject) value;
-			for (Iterator valueKeys = jsonValue.keys(); valueKeys.hasNext(); ) {
-				key = (String) valueKeys.next();
-				validate(context, component, key, jsonValue.opt(key), validatorStrings, validators, depth);
-			}
-		} else if (value instanceof JSONArray) {
-			// simply recurse
-			JSONArray jsonValue = (JSONArray) value;
-			for (int i = 0; i < jsonValue.length(); i++) {
-				// use the same key again, because leaf data are encapsulated in one-element-arrays
-				validate(context, component, key, jsonValue.get(i), validatorStrings, validators, depth);
-			}
-		} else if (depth > 2) {
-			List<Validator> myValidators = determineValidators(context, component, key, 
-					validatorStrings, validators);
-			if (myValidators != null) {
-				for (int i = 0; i < myValidators.size(); i++) {
-					Validator validator = myValidators.get(i);
-					Map<String, Object> validatorParams = validatorStrings.get(key).get(i);
-					if (validator != null) {
-						String previousLabel = (String) component.getAttributes().get("label");
-						String newLabel = null;
-						if (validatorParams != null && validatorParams.get("label") != null) {
-							newLabel = (String) validatorParams.get("label");
-							component.getAttributes().put("label", newLabel);
-						}
-						validator.validate(context, component, value);
-						if (previousLabel == null) {
-							if (newLabel != null) {
-								component.getAttributes().remove("label");
-							}
-						} else {
-							component.getAttributes().put("label", newLabel);
-						}
-					}
-				}
+	private void validate(FacesContext context, UIComponent component, StoreCommands commands, 
+			ColumnValidators validators) {
+		for (StoreCommand command : commands) {
+			if (command instanceof StoreCommand.Insert) {
+				validate(context, component, ((StoreCommand.Insert) command).getItem(), validators);
+			} else if (command instanceof StoreCommand.Set) {
+				validate(context, component, ((StoreCommand.Set) command).getItem(), validators);
 			}
 		}
 	}
 
-	private List<Validator> determineValidators(FacesContext context, UIComponent component, String attribute,
-			Map<String, List<Map<String, Object>>> validatorStrings,
-			Map<String, List<Validator>> validators) {
-		List<Validator> myValidators = validators.get(attribute);
-		if (myValidators == null) {
-			List<Map<String, Object>> validatorMaps = validatorStrings.get(attribute);
-			if (validatorMaps != null) {
-				myValidators = new ArrayList<Validator>();
-				validators.put(attribute, myValidators);
-				for (Map<String, Object> validatorMap : validatorMaps) {
-					Validator validator = null;
-		    		if (validatorMap != null && validatorMap.get("id") != null){
-		    			try {
-		    				validator = context.getApplication().createValidator((String) validatorMap.get("id"));
-		    			} catch (FacesException e) {
-		   					throw new ValidatorException(new FacesMessage("Unable to create validator " + validatorMap.get("id"), 
-		   							"Unable to create validator " + validatorMap.get("id") + " defined in your dojo DataGrid"));
-		    			}
-		    		}
-		    		if (validator != null) {
-		    			myValidators.add(validator);
-		        		for (String validatorAttribute : validatorMap.keySet()) {
-		        			if ("label".equals(validatorAttribute)) {
-		        				continue;
-		        			} else if (!"id".equals(validatorAttribute)) {
-		        				BeanInfo beanInfo;
-								try {
-									beanInfo = Introspector.getBeanInfo(validator.getClass());
-								} catch (IntrospectionException e1) {
-									throw new IllegalArgumentException("Intorspection into " + validator.getClass().getName() + " failed.", e1);
-								}
-		        				PropertyDescriptor[] propertyDescriptors = beanInfo.getPropertyDescriptors();
-		        				for (PropertyDescriptor propertyDescriptor : propertyDescriptors) {
-		        					if (propertyDescriptor.getName().equals(validatorAttribute)) {
-		        						Method setter = propertyDescriptor.getWriteMethod();
-		        						Class paramType = setter.getParameterTypes()[0];
-		        						try {
-		        							setter.invoke(validator, StoreConverterBase.coerceTo(paramType, validatorMap.get(validatorAttribute)));
-		        						} catch (IllegalAccessException e) {
-		        							throw new IllegalArgumentException("IllegalAccessException invoking setter for " + propertyDescriptor.getName() + " for validator " + validator.getClass().getName(), e);
-		        						} catch (InvocationTargetException e) {
-		        							throw new IllegalArgumentException("InvocationTargetException invoking setter for " + propertyDescriptor.getName() + " for validator " + validator.getClass().getName(), e);
-		        						} catch (ParseException e) {
-		        							throw new IllegalArgumentException("ParseException invoking setter for " + propertyDescriptor.getName() + " for validator " + validator.getClass().getName(), e);
-		        						}
-		        					}
-		        					
-		        				}
-		        			}
-		        		}
-		    		}
+	/**
+	 * Recursively step through the attributes of an item and perform validation on the leafs
+	 */
+	private void validate(FacesContext context, UIComponent component, StoreCommand.Item item, 
+			ColumnValidators validators) {
+		for (int i = 0; i < item.size(); i++) {
+			validate(context, component, item.getName(i), item.getValue(i), validators);
+		}
+	}
+
+	private void validate(FacesContext context, UIComponent component, String key, Object value, 
+			ColumnValidators validators) {
+		if (value instanceof StoreCommand.Item) {
+			// simply recurse
+			validate(context, component, (StoreCommand.Item) value, validators);
+		} else if (value instanceof List) {
+			// use the same key again, because leaf data are encapsulated in one-element-arrays
+			for (Object element : (List) value) {
+				validate(context, component, key, element, validators);
+			}
+		} else {
+			StorePlan.Column column = validators.getPlan().getColumn(key);
+			if (column == null) return;
+			Validator[] myValidators = validators.get(context, column);
+			UIComponent[] components = validators.getComponents(context, column);
+			for (int i = 0; i < myValidators.length; i++) {
+				if (myValidators[i] != null) {
+					myValidators[i].validate(context, components[i], value);
 				}
 			}
 		}
-		return validators.get(attribute);
 	}
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.dojo.validator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.faces.FacesException;
+import jakarta.faces.application.FacesMessage;
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.validator.Validator;
+import jakarta.faces.validator.ValidatorException;
+
+import org.j4fry.dojo.converter.AttributeSetup;
+
+/**
+ * Creates a validator defined for a column of a store's structure and sets the
+ * validator's attributes by an {@link AttributeSetup}. A ValidatorFactory is
+ * immutable and part of a {@link org.j4fry.dojo.converter.StorePlan}.
+ * The standard validators keep no state besides their attributes, a single
+ * configured instance of them is shared by all requests.
+ */
+public class ValidatorFactory {
+
+	/**
+	 * Standard validators that don't keep state between validations
+	 */
+	private static final Set<String> STATELESS = new HashSet<String>(Arrays.asList(
+			"jakarta.faces.validator.DoubleRangeValidator",
+			"jakarta.faces.validator.LengthValidator",
+			"jakarta.faces.validator.LongRangeValidator",
+			"jakarta.faces.validator.RegexValidator",
+			"jakarta.faces.validator.RequiredValidator"));
+
+	private final String id;
+	private final String label;
+	private final Map<String, Object> attributes;
+	private volatile AttributeSetup setup;
+	private volatile Validator shared;
+
+	/**
+	 * @param attributes The validator definition of the structure, "id" selects the validator
+	 * and "label" is used in messages, all other entries are set on the validator.
+	 */
+	public ValidatorFactory(Map<String, Object> attributes) {
+		Map<String, Object> myAttributes = new HashMap<String, Object>(attributes);
+		this.id = (String) myAttributes.remove("id");
+		this.label = (String) myAttributes.remove("label");
+		this.attributes = Collections.unmodifiableMap(myAttributes);
+	}
+
+	/**
+	 * @return the label defined for the validator or null
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * Create and configure a new validator, standard validators are shared
+	 *
+	 * @param context The FacesContext
+	 * @return The validator or null if no id is defined
+	 */
+	public Validator create(FacesContext context) {
+		if (id == null) return null;
+		Validator validator = shared;
+		if (validator != null) return validator;
+		try {
+			validator = context.getApplication().createValidator(id);
+		} catch (FacesException e) {
+			throw new ValidatorException(new FacesMessage("Unable to create validator " + id,
+					"Unable to create validator " + id + " defined in your dojo DataGrid"));
+		}
+		if (validator != null) {
+			AttributeSetup mySetup = setup;
+			if (mySetup == null || mySetup.getType() != validator.getClass()) {
+				mySetup = AttributeSetup.get(context, validator.getClass(), attributes);
+				setup = mySetup;
+			}
+			mySetup.apply(validator);
+			if (STATELESS.contains(validator.getClass().getName())) {
+				shared = validator;
+			}
+		}
+		return validator;
+	}
+}
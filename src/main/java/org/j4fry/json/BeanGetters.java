@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.json;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The getters that {@link JSONObject#JSONObject(Object, boolean)} reads from a bean.
+ * The methods of a class are scanned and unreflected to MethodHandles once, wrapping
+ * further beans of the same class doesn't go through getMethods() and Method.invoke.
+ */
+final class BeanGetters {
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private static final ClassValue<BeanGetters> DECLARED = new ClassValue<BeanGetters>() {
+		protected BeanGetters computeValue(Class<?> type) {
+			return new BeanGetters(type.getDeclaredMethods());
+		}
+	};
+
+	private static final ClassValue<BeanGetters> ALL = new ClassValue<BeanGetters>() {
+		protected BeanGetters computeValue(Class<?> type) {
+			return new BeanGetters(type.getMethods());
+		}
+	};
+
+	private final Getter[] getters;
+
+	private BeanGetters(Method[] methods) {
+		List<Getter> myGetters = new ArrayList<Getter>();
+		for (Method method : methods) {
+			String key = getKey(method);
+			if (key != null) {
+				myGetters.add(new Getter(key, method));
+			}
+		}
+		this.getters = myGetters.toArray(new Getter[myGetters.size()]);
+	}
+
+	/**
+	 * @param type The class of the bean
+	 * @param includeSuperClass Whether the getters of super classes are included
+	 * @return The getters in the order of getMethods() or getDeclaredMethods()
+	 */
+	static Getter[] get(Class type, boolean includeSuperClass) {
+		return (includeSuperClass ? ALL : DECLARED).get(type).getters;
+	}
+
+	/**
+	 * The key is formed by removing the "get" or "is" prefix. If the second remaining
+	 * character is not upper case, then the first character is converted to lower case.
+	 *
+	 * @return The key or null if method is not a getter
+	 */
+	private static String getKey(Method method) {
+		String name = method.getName();
+		String key = "";
+		if (name.startsWith("get")) {
+			key = name.substring(3);
+		} else if (name.startsWith("is")) {
+			key = name.substring(2);
+		}
+		if (key.length() == 0 || !Character.isUpperCase(key.charAt(0)) || method.getParameterTypes().length != 0) {
+			return null;
+		}
+		if (key.length() == 1) {
+			key = key.toLowerCase();
+		} else if (!Character.isUpperCase(key.charAt(1))) {
+			key = key.substring(0, 1).toLowerCase() + key.substring(1);
+		}
+		return key;
+	}
+
+	static final class Getter {
+
+		private final String key;
+		private final MethodHandle handle;
+		private final IllegalAccessException error;
+
+		private Getter(String key, Method method) {
+			this.key = key;
+			MethodHandle myHandle = null;
+			IllegalAccessException myError = null;
+			try {
+				myHandle = MethodHandles.lookup().unreflect(method);
+				if (Modifier.isStatic(method.getModifiers())) {
+					myHandle = MethodHandles.dropArguments(myHandle, 0, Object.class);
+				}
+				myHandle = myHandle.asType(GETTER_TYPE);
+			} catch (IllegalAccessException e) {
+				// like Method.invoke the getter fails when it is read
+				myError = e;
+			}
+			this.handle = myHandle;
+			this.error = myError;
+		}
+
+		String getKey() {
+			return key;
+		}
+
+		/**
+		 * @param bean The bean
+		 * @return The value of the property
+		 * @throws Throwable If the getter is not accessible or throws
+		 */
+		Object get(Object bean) throws Throwable {
+			if (error != null) throw error;
+			return handle.invokeExact(bean);
+		}
+	}
+}
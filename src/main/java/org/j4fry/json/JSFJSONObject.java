@@ -18,14 +18,12 @@
  */
 package org.j4fry.json;
 
-import java.util.Map;
-
 import jakarta.faces.component.UIComponent;
 import jakarta.faces.context.FacesContext;
 import jakarta.faces.convert.Converter;
-import jakarta.faces.el.ValueBinding;
 
-import org.j4fry.dojo.converter.StoreConverterBase;
+import org.j4fry.dojo.converter.ColumnConverters;
+import org.j4fry.dojo.converter.StorePlan;
 
 /**
  * Converts a JSON String to a Java object while using a given set of JSF converters
@@ -33,12 +31,8 @@ import org.j4fry.dojo.converter.StoreConverterBase;
 public class JSFJSONObject extends JSONObject {
 
     public JSFJSONObject(FacesContext context, UIComponent component,
-    		String content, String changedContent, Map<String, String> valueBindingStrings,
-    		Map<String, Map<String, String>> converterStrings, Map<String, ValueBinding> valueBindings,
-    		Map<String, Converter> converters) throws JSONException {
-        this(new JSFJSONTokener(context, component, content, changedContent, valueBindingStrings,
-				converterStrings, valueBindings, converters), context, component, valueBindingStrings,
-				converterStrings, valueBindings, converters);
+    		String changedContent, ColumnConverters converters) throws JSONException {
+        this(new JSFJSONTokener(context, component, changedContent, converters), context, component, converters);
     }
 
 
@@ -50,9 +44,7 @@ public class JSFJSONObject extends JSONObject {
      *  or a duplicate key.
      */
     public JSFJSONObject(JSFJSONTokener x, FacesContext context, UIComponent component, 
-    		Map<String, String> valueBindingStrings,
-    		Map<String, Map<String, String>> converterStrings, Map<String, ValueBinding> valueBindings,
-    		Map<String, Converter> converters) throws JSONException {
+    		ColumnConverters converters) throws JSONException {
         super();
         char c;
         String key;
@@ -91,25 +83,7 @@ public class JSFJSONObject extends JSONObject {
             }
             if (nextValue instanceof String) {
             	// reached leaf, do conversion
-            	Converter converter = StoreConverterBase.determineConverter(context, component, key, converters, converterStrings, 
-            			valueBindings, valueBindingStrings, true);
-            	if (converter != null) {
-            		String previousLabel = (String) component.getAttributes().get("label");
-            		String newLabel = null;
-            		if (converterStrings.get(key) != null && converterStrings.get(key).get("label") != null) {
-            			newLabel = converterStrings.get(key).get("label");
-            			component.getAttributes().put("label", newLabel);
-            		}
-            		
-                	nextValue = converter.getAsObject(context, component, (String) nextValue);
-                	if (previousLabel == null) {
-                		if (newLabel != null) {
-                			component.getAttributes().remove("label");
-                		}
-                	} else {
-            			component.getAttributes().put("label", previousLabel);
-                	}
-            	}
+            	nextValue = convert(context, component, converters, key, (String) nextValue);
             }
             map.put(key, nextValue);
 
@@ -132,4 +106,23 @@ public class JSFJSONObject extends JSONObject {
             }
         }
     }
+
+    /**
+     * Convert a leaf with the converter of its column. The converter is called with
+     * a view of the component that answers the column's label, so conversion messages
+     * name the column.
+     * @param context The FacesContext
+     * @param component The hidden input that holds the store's updates
+     * @param converters The converters of the store's columns
+     * @param key The attribute name of the leaf
+     * @param value The leaf as sent by the store
+     * @return The converted value or value itself if the column has no converter
+     */
+    public static Object convert(FacesContext context, UIComponent component,
+    		ColumnConverters converters, String key, String value) {
+    	Converter converter = converters.get(context, key);
+    	if (converter == null) return value;
+    	StorePlan.Column column = converters.getPlan().getColumn(key);
+    	return converter.getAsObject(context, converters.getComponent(component, column), value);
+    }
 }
@@ -19,13 +19,11 @@
 package org.j4fry.json;
 
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 
 import jakarta.faces.component.UIComponent;
 import jakarta.faces.context.FacesContext;
-import jakarta.faces.convert.Converter;
-import jakarta.faces.el.ValueBinding;
+
+import org.j4fry.dojo.converter.ColumnConverters;
 
 
 /**
@@ -34,21 +32,13 @@ import jakarta.faces.el.ValueBinding;
  */
 public class JSFJSONTokener extends JSONTokener {
 
-	private Map<String, ValueBinding> valueBindings = new HashMap<String, ValueBinding>();
-	private Map<String, String> valueBindingStrings = new HashMap<String, String>();
-	private Map<String, Map<String, String>> converterStrings = new HashMap<String, Map<String, String>>();
-	private Map<String, Converter> converters = new HashMap<String, Converter>();
+	private ColumnConverters converters;
 	private FacesContext context; 
 	private UIComponent component;
 
 	public JSFJSONTokener(FacesContext context, UIComponent component,
-    		String content, String changedContent,	Map<String, String> valueBindingStrings,
-    		Map<String, Map<String, String>> converterStrings, Map<String, ValueBinding> valueBindings,
-    		Map<String, Converter> converters) throws JSONException {
+    		String changedContent, ColumnConverters converters) throws JSONException {
 		super(changedContent);
-		this.valueBindingStrings = valueBindingStrings;
-		this.valueBindings = valueBindings;
-		this.converterStrings = converterStrings;
 		this.converters = converters;
 		this.context = context;
 		this.component = component;
@@ -71,7 +61,7 @@ public class JSFJSONTokener extends JSONTokener {
                 return nextString(c);
             case '{':
                 back();
-                return new JSFJSONObject(this, context, component, valueBindingStrings, converterStrings, valueBindings, converters);
+                return new JSFJSONObject(this, context, component, converters);
             case '[':
             case '(':
                 back();
@@ -30,8 +30,11 @@ import java.io.Writer;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A JSONArray is an ordered sequence of values. Its external text form is a
@@ -87,7 +90,15 @@ public class JSONArray implements Serializable {
     /**
      * The arrayList where the JSONArray's properties are kept.
      */
-    private ArrayList myArrayList;
+    private List myArrayList;
+
+
+    /**
+     * @return The elements, for {@link JSONSerializer}
+     */
+    List getList() {
+        return this.myArrayList;
+    }
 
 
     /**
@@ -177,10 +188,22 @@ public class JSONArray implements Serializable {
      */
 
     public JSONArray(Collection collection,boolean includeSuperClass) {
+        this(collection, includeSuperClass, null);
+    }
+
+    /**
+     * Construct a JSONArray from a collection of beans, reading only the
+     * bean properties whose keys are contained in include. The getters of a
+     * class are looked up once for all elements.
+     * 
+     * @param include The keys of the bean properties to read, all properties if null.
+     */
+
+    public JSONArray(Collection collection,boolean includeSuperClass,Set include) {
 		this.myArrayList = new ArrayList();
 		if(collection != null) {
 			for (Iterator iter = collection.iterator(); iter.hasNext();) {
-				this.myArrayList.add(new JSONObject(iter.next(),includeSuperClass));	
+				this.myArrayList.add(new JSONObject(iter.next(),includeSuperClass,include));	
 			}
 		}
     }
@@ -209,11 +232,22 @@ public class JSONArray implements Serializable {
      * @throws JSONException If not an array.
      */
     public JSONArray(Object array,boolean includeSuperClass) throws JSONException {
+        this(array, includeSuperClass, null);
+    }
+
+    /**
+     * Construct a JSONArray from an array with beans, reading only the
+     * bean properties whose keys are contained in include.
+     * 
+     * @param include The keys of the bean properties to read, all properties if null.
+     * @throws JSONException If not an array.
+     */
+    public JSONArray(Object array,boolean includeSuperClass,Set include) throws JSONException {
         this();
         if (array.getClass().isArray()) {
             int length = Array.getLength(array);
             for (int i = 0; i < length; i += 1) {
-                this.put(new JSONObject(Array.get(array, i),includeSuperClass));
+                this.put(new JSONObject(Array.get(array, i),includeSuperClass,include));
             }
         } else {
             throw new JSONException("JSONArray initial value should be a string or collection or array.");
@@ -379,13 +413,17 @@ public class JSONArray implements Serializable {
      */
     public String join(String separator) throws JSONException {
         int len = length();
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = new StringBuilder();
 
-        for (int i = 0; i < len; i += 1) {
-            if (i > 0) {
-                sb.append(separator);
+        try {
+            for (int i = 0; i < len; i += 1) {
+                if (i > 0) {
+                    sb.append(separator);
+                }
+                JSONSerializer.write(sb, this.myArrayList.get(i));
             }
-            sb.append(JSONObject.valueToString(this.myArrayList.get(i)));
+        } catch (IOException e) {
+            throw new JSONException(e);
         }
         return sb.toString();
     }
@@ -767,6 +805,24 @@ public class JSONArray implements Serializable {
     }
 
 
+    /**
+     * Produce a deep copy of this JSONArray that cannot be modified.
+     * Nested JSONObjects and JSONArrays are copied as well, so the
+     * result can be shared between threads. The put methods of the
+     * copy throw an UnsupportedOperationException.
+     * @return An unmodifiable JSONArray.
+     */
+    public JSONArray toUnmodifiable() {
+        List list = new ArrayList(this.myArrayList.size());
+        for (Object value : this.myArrayList) {
+            list.add(JSONObject.unmodifiableValue(value));
+        }
+        JSONArray ja = new JSONArray();
+        ja.myArrayList = Collections.unmodifiableList(list);
+        return ja;
+    }
+
+
     /**
      * Put or replace an object value in the JSONArray. If the index is greater
      *  than the length of the JSONArray, then null elements will be added as
@@ -830,7 +886,9 @@ public class JSONArray implements Serializable {
      */
     public String toString() {
         try {
-            return '[' + join(",") + ']';
+            StringBuilder sb = new StringBuilder();
+            JSONSerializer.write(sb, this);
+            return sb.toString();
         } catch (Exception e) {
             return null;
         }
@@ -864,35 +922,7 @@ public class JSONArray implements Serializable {
      * @throws JSONException
      */
     String toString(int indentFactor, int indent) throws JSONException {
-        int len = length();
-        if (len == 0) {
-            return "[]";
-        }
-        int i;
-        StringBuffer sb = new StringBuffer("[");
-        if (len == 1) {
-            sb.append(JSONObject.valueToString(this.myArrayList.get(0),
-                    indentFactor, indent));
-        } else {
-            int newindent = indent + indentFactor;
-            sb.append('\n');
-            for (i = 0; i < len; i += 1) {
-                if (i > 0) {
-                    sb.append(",\n");
-                }
-                for (int j = 0; j < newindent; j += 1) {
-                    sb.append(' ');
-                }
-                sb.append(JSONObject.valueToString(this.myArrayList.get(i),
-                        indentFactor, newindent));
-            }
-            sb.append('\n');
-            for (i = 0; i < indent; i += 1) {
-                sb.append(' ');
-            }
-        }
-        sb.append(']');
-        return sb.toString();
+        return JSONObject.valueToString(this, indentFactor, indent);
     }
 
 
@@ -907,26 +937,7 @@ public class JSONArray implements Serializable {
      */
     public Writer write(Writer writer) throws JSONException {
         try {
-            boolean b = false;
-            int     len = length();
-
-            writer.write('[');
-
-            for (int i = 0; i < len; i += 1) {
-                if (b) {
-                    writer.write(',');
-                }
-                Object v = this.myArrayList.get(i);
-                if (v instanceof JSONObject) {
-                    ((JSONObject)v).write(writer);
-                } else if (v instanceof JSONArray) {
-                    ((JSONArray)v).write(writer);
-                } else {
-                    writer.write(JSONObject.valueToString(v));
-                }
-                b = true;
-            }
-            writer.write(']');
+            JSONSerializer.write(writer, this);
             return writer;
         } catch (IOException e) {
            throw new JSONException(e);
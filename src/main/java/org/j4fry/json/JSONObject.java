@@ -28,13 +28,14 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.io.Writer;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 
 /**
@@ -243,11 +244,23 @@ public class JSONObject implements Serializable {
      * @param includeSuperClass - Tell whether to include the super class properties.
      */
     public JSONObject(Map map, boolean includeSuperClass) {
+        this(map, includeSuperClass, null);
+    }
+
+    /**
+     * Construct a JSONObject from a Map with Key-Bean data, reading only the
+     * bean properties whose keys are contained in include.
+     * 
+     * @param map - A map with Key-Bean data.
+     * @param includeSuperClass - Tell whether to include the super class properties.
+     * @param include - The keys of the bean properties to read, all properties if null.
+     */
+    public JSONObject(Map map, boolean includeSuperClass, Set include) {
        	this.map = new HashMap();
        	if (map != null){
             for (Iterator i = map.entrySet().iterator(); i.hasNext(); ) {
                 Map.Entry e = (Map.Entry)i.next();
-                this.map.put(e.getKey(), new JSONObject(e.getValue(), includeSuperClass));
+                this.map.put(e.getKey(), new JSONObject(e.getValue(), includeSuperClass, include));
             }
        	}
     }
@@ -293,7 +306,28 @@ public class JSONObject implements Serializable {
         populateInternalMap(bean, includeSuperClass);
     }
     
+    /**
+     * Construct JSONObject from the given bean, reading only the properties
+     * whose keys are contained in include, e.g. the attributes of a store
+     * structure. The include list applies to the inner objects as well.
+     * 
+     * -- See Documentation of JSONObject(Object bean) also.
+     * 
+     * @param bean An object that has getter methods that should be used
+     * to make a JSONObject.
+     * @param includeSuperClass - Tell whether to include the super class properties.
+     * @param include - The keys of the properties to read, all properties if null.
+     */
+    public JSONObject(Object bean, boolean includeSuperClass, Set include) {
+    	this();
+        populateInternalMap(bean, includeSuperClass, include);
+    }
+    
     private void populateInternalMap(Object bean, boolean includeSuperClass){
+        populateInternalMap(bean, includeSuperClass, null);
+    }
+    
+    private void populateInternalMap(Object bean, boolean includeSuperClass, Set include){
     	Class klass = bean.getClass();
     	
         //If klass.getSuperClass is System class then includeSuperClass = false;
@@ -302,47 +336,39 @@ public class JSONObject implements Serializable {
     		includeSuperClass = false;
     	}
     	
-    	Method[] methods = (includeSuperClass) ? 
-    			klass.getMethods() : klass.getDeclaredMethods();
-        for (int i = 0; i < methods.length; i += 1) {
+    	BeanGetters.Getter[] getters = BeanGetters.get(klass, includeSuperClass);
+        for (int i = 0; i < getters.length; i += 1) {
+            String key = getters[i].getKey();
+            if (include != null && !include.contains(key)) {
+                continue;
+            }
+            Object result;
             try {
-                Method method = methods[i];
-                String name = method.getName();
-                String key = "";
-                if (name.startsWith("get")) {
-                    key = name.substring(3);
-                } else if (name.startsWith("is")) {
-                    key = name.substring(2);
-                }
-                if (key.length() > 0 &&
-                        Character.isUpperCase(key.charAt(0)) &&
-                        method.getParameterTypes().length == 0) {
-                    if (key.length() == 1) {
-                        key = key.toLowerCase();
-                    } else if (!Character.isUpperCase(key.charAt(1))) {
-                        key = key.substring(0, 1).toLowerCase() +
-                            key.substring(1);
-                    }
-                    
-                    Object result = method.invoke(bean, (Object[])null);
-                    if (result == null){
-                    	map.put(key, NULL);
-                    }else if (result.getClass().isArray()) {
-                    	map.put(key, new JSONArray(result,includeSuperClass));
-                    }else if (result instanceof Collection) { //List or Set
-                    	map.put(key, new JSONArray((Collection)result,includeSuperClass));
-                    }else if (result instanceof Map) {
-                    	map.put(key, new JSONObject((Map)result,includeSuperClass));
-                    }else if (isStandardProperty(result.getClass())) { //Primitives, String and Wrapper
-                    	map.put(key, result);
-                    }else{
-                    	if (result.getClass().getPackage().getName().startsWith("java") || 
-                    			result.getClass().getClassLoader() == null) { 
-                    		map.put(key, result.toString());
-                    	} else { //User defined Objects
-                    		map.put(key, new JSONObject(result,includeSuperClass));
-                    	}
-                    }
+                result = getters[i].get(bean);
+            } catch (Error e) {
+            	throw e;
+            } catch (Throwable e) {
+            	// method handles throw the getter's own checked exceptions
+            	throw new RuntimeException(e);
+            }
+            try {
+                if (result == null){
+                	map.put(key, NULL);
+                }else if (result.getClass().isArray()) {
+                	map.put(key, new JSONArray(result,includeSuperClass,include));
+                }else if (result instanceof Collection) { //List or Set
+                	map.put(key, new JSONArray((Collection)result,includeSuperClass,include));
+                }else if (result instanceof Map) {
+                	map.put(key, new JSONObject((Map)result,includeSuperClass,include));
+                }else if (isStandardProperty(result.getClass())) { //Primitives, String and Wrapper
+                	map.put(key, result);
+                }else{
+                	if (result.getClass().getPackage().getName().startsWith("java") || 
+                			result.getClass().getClassLoader() == null) { 
+                		map.put(key, result.toString());
+                	} else { //User defined Objects
+                		map.put(key, new JSONObject(result,includeSuperClass,include));
+                	}
                 }
             } catch (Exception e) {
             	throw new RuntimeException(e);
@@ -1110,57 +1136,88 @@ public class JSONObject implements Serializable {
         if (string == null || string.length() == 0) {
             return "\"\"";
         }
+        StringBuilder sb = new StringBuilder(string.length() + 4);
+        try {
+            quote(string, sb);
+        } catch (IOException e) {
+            // a StringBuilder does not throw
+        }
+        return sb.toString();
+    }
 
-        char         b;
-        char         c = 0;
-        int          i;
-        int          len = string.length();
-        StringBuffer sb = new StringBuffer(len + 4);
-        String       t;
-
-        sb.append('"');
-        for (i = 0; i < len; i += 1) {
-            b = c;
-            c = string.charAt(i);
-            switch (c) {
-            case '\\':
-            case '"':
-                sb.append('\\');
-                sb.append(c);
-                break;
-            case '/':
-                if (b == '<') {
-                    sb.append('\\');
-                }
-                sb.append(c);
-                break;
-            case '\b':
-                sb.append("\\b");
-                break;
-            case '\t':
-                sb.append("\\t");
-                break;
-            case '\n':
-                sb.append("\\n");
-                break;
-            case '\f':
-                sb.append("\\f");
-                break;
-            case '\r':
-                sb.append("\\r");
-                break;
-            default:
-                if (c < ' ' || (c >= '\u0080' && c < '\u00a0') ||
-                               (c >= '\u2000' && c < '\u2100')) {
-                    t = "000" + Integer.toHexString(c);
-                    sb.append("\\u" + t.substring(t.length() - 4));
-                } else {
-                    sb.append(c);
+
+    /**
+     * How ASCII characters are escaped by quote: 0 for none, the letter of
+     * the backslash sequence, 'u' for a unicode escape or '/' if the
+     * character is escaped after '&lt;' only.
+     */
+    private static final char[] ESCAPES = new char[128];
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    static {
+        for (char c = 0; c < ' '; c += 1) {
+            ESCAPES[c] = 'u';
+        }
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\t'] = 't';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['/'] = '/';
+    }
+
+
+    /**
+     * Append a string in double quotes with backslash sequences in all the
+     * right places, the same text as {@link #quote(String)} returns. Runs of
+     * characters that need no escape are appended at once.
+     * @param string A String
+     * @param out The target, e.g. a StringBuilder or a Writer.
+     * @throws IOException If the target throws.
+     */
+    public static void quote(String string, Appendable out) throws IOException {
+        if (string == null || string.length() == 0) {
+            out.append("\"\"");
+            return;
+        }
+        int len = string.length();
+        int start = 0;
+        out.append('"');
+        for (int i = 0; i < len; i += 1) {
+            char c = string.charAt(i);
+            char escape;
+            if (c < 128) {
+                escape = ESCAPES[c];
+                if (escape == 0 || (escape == '/' && (i == 0 || string.charAt(i - 1) != '<'))) {
+                    continue;
                 }
+            } else if ((c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+                escape = 'u';
+            } else {
+                continue;
+            }
+            if (i > start) {
+                out.append(string, start, i);
+            }
+            start = i + 1;
+            out.append('\\');
+            if (escape == 'u') {
+                out.append('u');
+                out.append(HEX[c >> 12 & 0xF]);
+                out.append(HEX[c >> 8 & 0xF]);
+                out.append(HEX[c >> 4 & 0xF]);
+                out.append(HEX[c & 0xF]);
+            } else {
+                out.append(escape);
             }
         }
-        sb.append('"');
-        return sb.toString();
+        if (len > start) {
+            out.append(string, start, len);
+        }
+        out.append('"');
     }
 
     /**
@@ -1173,6 +1230,31 @@ public class JSONObject implements Serializable {
         return this.map.remove(key);
     }
    
+    /**
+     * Produce a deep copy of this JSONObject that cannot be modified.
+     * Nested JSONObjects and JSONArrays are copied as well, so the
+     * result can be shared between threads. The put and remove methods
+     * of the copy throw an UnsupportedOperationException.
+     * @return An unmodifiable JSONObject.
+     */
+    public JSONObject toUnmodifiable() {
+        Map copy = new LinkedHashMap();
+        for (Iterator keys = keys(); keys.hasNext();) {
+            Object key = keys.next();
+            copy.put(key, unmodifiableValue(this.map.get(key)));
+        }
+        return new JSONObject(Collections.unmodifiableMap(copy));
+    }
+
+    static Object unmodifiableValue(Object value) {
+        if (value instanceof JSONObject) {
+            return ((JSONObject) value).toUnmodifiable();
+        } else if (value instanceof JSONArray) {
+            return ((JSONArray) value).toUnmodifiable();
+        }
+        return value;
+    }
+
     /**
      * Get an enumeration of the keys of the JSONObject.
      * The keys will be sorted alphabetically.
@@ -1269,19 +1351,8 @@ public class JSONObject implements Serializable {
      */
     public String toString() {
         try {
-            Iterator     keys = keys();
-            StringBuffer sb = new StringBuffer("{");
-
-            while (keys.hasNext()) {
-                if (sb.length() > 1) {
-                    sb.append(',');
-                }
-                Object o = keys.next();
-                sb.append(quote(o.toString()));
-                sb.append(':');
-                sb.append(valueToString(this.map.get(o)));
-            }
-            sb.append('}');
+            StringBuilder sb = new StringBuilder();
+            JSONSerializer.write(sb, this);
             return sb.toString();
         } catch (Exception e) {
             return null;
@@ -1320,46 +1391,7 @@ public class JSONObject implements Serializable {
      * @throws JSONException If the object contains an invalid number.
      */
     String toString(int indentFactor, int indent) throws JSONException {
-        int j;
-        int n = length();
-        if (n == 0) {
-            return "{}";
-        }
-        Iterator     keys = sortedKeys();
-        StringBuffer sb = new StringBuffer("{");
-        int          newindent = indent + indentFactor;
-        Object       o;
-        if (n == 1) {
-            o = keys.next();
-            sb.append(quote(o.toString()));
-            sb.append(": ");
-            sb.append(valueToString(this.map.get(o), indentFactor,
-                    indent));
-        } else {
-            while (keys.hasNext()) {
-                o = keys.next();
-                if (sb.length() > 1) {
-                    sb.append(",\n");
-                } else {
-                    sb.append('\n');
-                }
-                for (j = 0; j < newindent; j += 1) {
-                    sb.append(' ');
-                }
-                sb.append(quote(o.toString()));
-                sb.append(": ");
-                sb.append(valueToString(this.map.get(o), indentFactor,
-                        newindent));
-            }
-            if (sb.length() > 1) {
-                sb.append('\n');
-                for (j = 0; j < indent; j += 1) {
-                    sb.append(' ');
-                }
-            }
-        }
-        sb.append('}');
-        return sb.toString();
+        return valueToString(this, indentFactor, indent);
     }
 
 
@@ -1385,41 +1417,30 @@ public class JSONObject implements Serializable {
      * @throws JSONException If the value is or contains an invalid number.
      */
     public static String valueToString(Object value) throws JSONException {
-        if (value == null || value.equals(null)) {
-            return "null";
-        }
-        if (value instanceof JSONString) {
-            Object o;
-            try {
-                o = ((JSONString)value).toJSONString();
-            } catch (Exception e) {
-                throw new JSONException(e);
-            }
-            if (o instanceof String) {
-                return (String)o;
-            }
-            throw new JSONException("Bad value from toJSONString: " + o);
-        }
-        if (value instanceof Number) {
-            return numberToString((Number) value);
-        }
-        if (value instanceof Boolean || value instanceof JSONObject ||
-                value instanceof JSONArray) {
-            return value.toString();
-        }
-        if (value instanceof Map) {
-            return new JSONObject((Map)value).toString();
-        }
-        if (value instanceof Collection) {
-            return new JSONArray((Collection)value).toString();
-        }
-        if (value.getClass().isArray()) {
-            return new JSONArray(value).toString();
-        }
-        if (value instanceof Date) {
-        	return "new Date(" + ((Date) value).getTime() + ")";
+        StringBuilder sb = new StringBuilder();
+        try {
+            JSONSerializer.write(sb, value);
+        } catch (IOException e) {
+            throw new JSONException(e);
         }
-        return quote(value.toString());
+        return sb.toString();
+    }
+
+
+    /**
+     * Append the JSON text of an Object value to a target, the same text
+     * as {@link #valueToString(Object)} returns. Nested values are appended
+     * in place without intermediate Strings.
+     * <p>
+     * Warning: This method assumes that the data structure is acyclical.
+     * @param out The target, e.g. a StringBuilder or a Writer.
+     * @param value The value to be serialized.
+     * @throws IOException If the target throws.
+     * @throws JSONException If the value is or contains an invalid number.
+     */
+    public static void writeValue(Appendable out, Object value)
+            throws IOException, JSONException {
+        JSONSerializer.write(out, value);
     }
 
 
@@ -1439,41 +1460,13 @@ public class JSONObject implements Serializable {
      */
      static String valueToString(Object value, int indentFactor, int indent)
             throws JSONException {
-        if (value == null || value.equals(null)) {
-            return "null";
-        }
+        StringBuilder sb = new StringBuilder();
         try {
-            if (value instanceof JSONString) {
-                Object o = ((JSONString)value).toJSONString();
-                if (o instanceof String) {
-                    return (String)o;
-                }
-            }
-        } catch (Exception e) {
-            /* forget about it */
-        }
-        if (value instanceof Number) {
-            return numberToString((Number) value);
-        }
-        if (value instanceof Boolean) {
-            return value.toString();
-        }
-        if (value instanceof JSONObject) {
-            return ((JSONObject)value).toString(indentFactor, indent);
-        }
-        if (value instanceof JSONArray) {
-            return ((JSONArray)value).toString(indentFactor, indent);
-        }
-        if (value instanceof Map) {
-            return new JSONObject((Map)value).toString(indentFactor, indent);
-        }
-        if (value instanceof Collection) {
-            return new JSONArray((Collection)value).toString(indentFactor, indent);
-        }
-        if (value.getClass().isArray()) {
-            return new JSONArray(value).toString(indentFactor, indent);
+            JSONSerializer.write(sb, value, indentFactor, indent);
+        } catch (IOException e) {
+            throw new JSONException(e);
         }
-        return quote(value.toString());
+        return sb.toString();
     }
 
 
@@ -1488,28 +1481,7 @@ public class JSONObject implements Serializable {
       */
      public Writer write(Writer writer) throws JSONException {
         try {
-            boolean  b = false;
-            Iterator keys = keys();
-            writer.write('{');
-
-            while (keys.hasNext()) {
-                if (b) {
-                    writer.write(',');
-                }
-                Object k = keys.next();
-                writer.write(quote(k.toString()));
-                writer.write(':');
-                Object v = this.map.get(k);
-                if (v instanceof JSONObject) {
-                    ((JSONObject)v).write(writer);
-                } else if (v instanceof JSONArray) {
-                    ((JSONArray)v).write(writer);
-                } else {
-                    writer.write(valueToString(v));
-                }
-                b = true;
-            }
-            writer.write('}');
+            JSONSerializer.write(writer, this);
             return writer;
         } catch (IOException e) {
             throw new JSONException(e);
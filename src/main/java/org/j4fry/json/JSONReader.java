@@ -0,0 +1,369 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.json;
+
+import java.util.Date;
+
+/**
+ * A pull parser that reads a JSON text event by event, so a large array can be
+ * processed element by element without building the whole JSONArray. It uses the
+ * same tokenizing rules as {@link JSONTokener} and accepts the same non-standard
+ * forms: single quoted strings, unquoted keys, '=' or '=>' after a key, ';' between
+ * values, ( ) around arrays, Date(...), new Date(...) and undefined.
+ *
+ * <pre>
+ * JSONReader reader = new JSONReader(new JSONTokener(text));
+ * reader.next(); // START_ARRAY
+ * while (reader.next() == JSONReader.Event.START_OBJECT) {
+ *     JSONObject item = (JSONObject) reader.readValue();
+ * }
+ * </pre>
+ */
+public class JSONReader {
+
+	/**
+	 * The events of a JSON text
+	 */
+	public enum Event {
+		START_OBJECT,
+		END_OBJECT,
+		START_ARRAY,
+		END_ARRAY,
+		/** The name of an attribute, see {@link JSONReader#getString()} */
+		KEY,
+		/** A quoted string or unquoted text that is not a number */
+		VALUE_STRING,
+		/** Unquoted text that is a number, its text is returned by {@link JSONReader#getString()} */
+		VALUE_NUMBER,
+		VALUE_TRUE,
+		VALUE_FALSE,
+		/** null, undefined or an omitted array element */
+		VALUE_NULL,
+		/** Date(...) or new Date(...) with milliseconds since 1970 */
+		VALUE_DATE
+	}
+
+	private static final int VALUE = 0;
+	private static final int FIRST_ELEMENT = 1;
+	private static final int KEY = 2;
+	private static final int AFTER_VALUE = 3;
+	private static final int DONE = 4;
+
+	private final JSONTokener x;
+	private final StringBuilder stack = new StringBuilder();
+	private int state = VALUE;
+	private Event event;
+	private String text;
+	private Object value;
+
+	/**
+	 * @param x The tokener that reads the JSON text
+	 */
+	public JSONReader(JSONTokener x) {
+		this.x = x;
+	}
+
+	/**
+	 * @return Whether the JSON text has more events
+	 */
+	public boolean hasNext() {
+		return state != DONE && !(state == AFTER_VALUE && stack.length() == 0);
+	}
+
+	/**
+	 * Read the next event
+	 *
+	 * @return The event or null at the end of the JSON text
+	 * @throws JSONException If the text is not valid
+	 */
+	public Event next() throws JSONException {
+		char c;
+		switch (state) {
+		case DONE:
+			return null;
+		case VALUE:
+			return readValueEvent();
+		case FIRST_ELEMENT:
+			if (x.nextClean() == ']') {
+				return end(Event.END_ARRAY);
+			}
+			x.back();
+			return readElement();
+		case KEY:
+			c = x.nextClean();
+			if (c == '}') {
+				return end(Event.END_OBJECT);
+			}
+			x.back();
+			return readKey();
+		default:
+			if (stack.length() == 0) {
+				state = DONE;
+				return setEvent(null, null, null);
+			}
+			char close = stack.charAt(stack.length() - 1);
+			c = x.nextClean();
+			if (close == '}') {
+				switch (c) {
+				case ';':
+				case ',':
+					if (x.nextClean() == '}') {
+						return end(Event.END_OBJECT);
+					}
+					x.back();
+					return readKey();
+				case '}':
+					return end(Event.END_OBJECT);
+				default:
+					throw x.syntaxError("Expected a ',' or '}'");
+				}
+			}
+			switch (c) {
+			case ';':
+			case ',':
+				if (x.nextClean() == ']') {
+					return end(Event.END_ARRAY);
+				}
+				x.back();
+				return readElement();
+			case ']':
+			case ')':
+				if (close != c) {
+					throw x.syntaxError("Expected a '" + close + "'");
+				}
+				return end(Event.END_ARRAY);
+			default:
+				throw x.syntaxError("Expected a ',' or ']'");
+			}
+		}
+	}
+
+	/**
+	 * @return The current event
+	 */
+	public Event getEvent() {
+		return event;
+	}
+
+	/**
+	 * @return The number of objects and arrays that enclose the current position
+	 */
+	public int getDepth() {
+		return stack.length();
+	}
+
+	/**
+	 * @return The name for KEY, the text of a string, number or date value, null otherwise
+	 */
+	public String getString() {
+		return text;
+	}
+
+	/**
+	 * @return The value as {@link JSONTokener#nextValue()} returns it: a String for strings
+	 * and numbers, a Boolean, a Date, JSONObject.NULL for null, null for undefined or an
+	 * omitted array element and for all other events
+	 */
+	public Object getValue() {
+		return value;
+	}
+
+	/**
+	 * Read the value at the current event. A START_OBJECT or START_ARRAY is read up to
+	 * its end into a JSONObject or JSONArray, the reader is positioned at the END event.
+	 *
+	 * @return The value
+	 * @throws JSONException If the text is not valid
+	 */
+	public Object readValue() throws JSONException {
+		if (event == Event.START_OBJECT) {
+			JSONObject o = new JSONObject();
+			while (next() == Event.KEY) {
+				String key = text;
+				next();
+				o.putOnce(key, readValue());
+			}
+			return o;
+		}
+		if (event == Event.START_ARRAY) {
+			JSONArray a = new JSONArray();
+			while (next() != Event.END_ARRAY) {
+				a.put(readValue());
+			}
+			return a;
+		}
+		return value;
+	}
+
+	/**
+	 * Skip the children of the current START_OBJECT or START_ARRAY, the reader is
+	 * positioned at the END event. Does nothing for other events.
+	 *
+	 * @throws JSONException If the text is not valid
+	 */
+	public void skipChildren() throws JSONException {
+		if (event != Event.START_OBJECT && event != Event.START_ARRAY) return;
+		int depth = stack.length();
+		while (stack.length() >= depth) {
+			if (next() == null) {
+				throw x.syntaxError("Unexpected end of text");
+			}
+		}
+	}
+
+	/**
+	 * An array element, two consecutive commas denote an omitted element
+	 */
+	private Event readElement() throws JSONException {
+		if (x.nextClean() == ',') {
+			x.back();
+			state = AFTER_VALUE;
+			return setEvent(Event.VALUE_NULL, null, null);
+		}
+		x.back();
+		return readValueEvent();
+	}
+
+	private Event readKey() throws JSONException {
+		char c = x.nextClean();
+		String key;
+		switch (c) {
+		case 0:
+			throw x.syntaxError("A JSONObject text must end with '}'");
+		case '"':
+		case '\'':
+			key = x.nextString(c);
+			break;
+		default:
+			key = x.nextUnquoted(c);
+			if (key.equals("")) {
+				throw x.syntaxError("Missing value");
+			}
+			key = JSONObject.stringToValue(key).toString();
+		}
+
+		/*
+		 * The key is followed by ':'. We will also tolerate '=' or '=>'.
+		 */
+		c = x.nextClean();
+		if (c == '=') {
+			if (x.next() != '>') {
+				x.back();
+			}
+		} else if (c != ':') {
+			throw x.syntaxError("Expected a ':' after a key");
+		}
+		state = VALUE;
+		return setEvent(Event.KEY, key, null);
+	}
+
+	private Event readValueEvent() throws JSONException {
+		char c = x.nextClean();
+		switch (c) {
+		case '"':
+		case '\'':
+			String s = x.nextString(c);
+			state = AFTER_VALUE;
+			return setEvent(Event.VALUE_STRING, s, s);
+		case '{':
+			stack.append('}');
+			state = KEY;
+			return setEvent(Event.START_OBJECT, null, null);
+		case '[':
+			stack.append(']');
+			state = FIRST_ELEMENT;
+			return setEvent(Event.START_ARRAY, null, null);
+		case '(':
+			stack.append(')');
+			state = FIRST_ELEMENT;
+			return setEvent(Event.START_ARRAY, null, null);
+		}
+		String s = x.nextUnquoted(c);
+		if (s.equals("")) {
+			throw x.syntaxError("Missing value");
+		}
+		state = AFTER_VALUE;
+		if (s.equalsIgnoreCase("true")) {
+			return setEvent(Event.VALUE_TRUE, s, Boolean.TRUE);
+		}
+		if (s.equalsIgnoreCase("false")) {
+			return setEvent(Event.VALUE_FALSE, s, Boolean.FALSE);
+		}
+		if (s.equalsIgnoreCase("null")) {
+			return setEvent(Event.VALUE_NULL, s, JSONObject.NULL);
+		}
+		if (s.equals("undefined")) {
+			return setEvent(Event.VALUE_NULL, s, null);
+		}
+		if (s.startsWith("Date(") && s.endsWith(")") && s.length() == 19) {
+			return setEvent(Event.VALUE_DATE, s, new Date(Long.parseLong(s.substring(5, 18))));
+		}
+		if (s.startsWith("new Date(") && s.endsWith(")") && s.length() == 23) {
+			return setEvent(Event.VALUE_DATE, s, new Date(Long.parseLong(s.substring(9, 22))));
+		}
+		return setEvent(isNumber(s) ? Event.VALUE_NUMBER : Event.VALUE_STRING, s, s);
+	}
+
+	private Event end(Event end) {
+		stack.setLength(stack.length() - 1);
+		state = AFTER_VALUE;
+		return setEvent(end, null, null);
+	}
+
+	private Event setEvent(Event event, String text, Object value) {
+		this.event = event;
+		this.text = text;
+		this.value = value;
+		return event;
+	}
+
+	/**
+	 * @return Whether s is a decimal number with optional sign, fraction and exponent
+	 */
+	private static boolean isNumber(String s) {
+		int i = 0;
+		int n = s.length();
+		if (i < n && (s.charAt(i) == '-' || s.charAt(i) == '+')) i++;
+		int digits = 0;
+		while (i < n && Character.isDigit(s.charAt(i))) {
+			i++;
+			digits++;
+		}
+		if (i < n && s.charAt(i) == '.') {
+			i++;
+			while (i < n && Character.isDigit(s.charAt(i))) {
+				i++;
+				digits++;
+			}
+		}
+		if (digits == 0) return false;
+		if (i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+			i++;
+			if (i < n && (s.charAt(i) == '-' || s.charAt(i) == '+')) i++;
+			int exponent = 0;
+			while (i < n && Character.isDigit(s.charAt(i))) {
+				i++;
+				exponent++;
+			}
+			if (exponent == 0) return false;
+		}
+		return i == n;
+	}
+
+	public String toString() {
+		return x.toString();
+	}
+}
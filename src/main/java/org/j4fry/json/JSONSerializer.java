@@ -0,0 +1,217 @@
+/*
+ * Copyright 2010 Ganesh Jung
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.j4fry.json;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Writes values as JSON text into a single Appendable. Nested objects and arrays,
+ * Maps, Collections and Java arrays are appended in place, so no intermediate
+ * Strings are built for them. toString, toString(indent) and write of
+ * {@link JSONObject} and {@link JSONArray} delegate to this class.
+ */
+final class JSONSerializer {
+
+	private final Appendable out;
+	private final int indentFactor;
+	private final boolean pretty;
+
+	private JSONSerializer(Appendable out, int indentFactor, boolean pretty) {
+		this.out = out;
+		this.indentFactor = indentFactor;
+		this.pretty = pretty;
+	}
+
+	/**
+	 * Append a value without whitespace, like {@link JSONObject#valueToString(Object)}
+	 *
+	 * @param out The target
+	 * @param value The value
+	 * @throws IOException If out throws
+	 * @throws JSONException If the value is or contains an invalid number
+	 */
+	static void write(Appendable out, Object value) throws IOException, JSONException {
+		new JSONSerializer(out, 0, false).value(value, 0);
+	}
+
+	/**
+	 * Append a prettyprinted value, like JSONObject.valueToString(Object, int, int)
+	 *
+	 * @param out The target
+	 * @param value The value
+	 * @param indentFactor The number of spaces to add to each level of indentation
+	 * @param indent The indentation of the top level
+	 * @throws IOException If out throws
+	 * @throws JSONException If the value is or contains an invalid number
+	 */
+	static void write(Appendable out, Object value, int indentFactor, int indent) throws IOException, JSONException {
+		new JSONSerializer(out, indentFactor, true).value(value, indent);
+	}
+
+	private void value(Object value, int indent) throws IOException, JSONException {
+		if (value == null || value.equals(null)) {
+			out.append("null");
+			return;
+		}
+		if (value instanceof JSONString) {
+			Object o;
+			try {
+				o = ((JSONString) value).toJSONString();
+			} catch (Exception e) {
+				// prettyprinting falls back to the other representations
+				if (!pretty) throw new JSONException(e);
+				o = null;
+			}
+			if (o instanceof String) {
+				out.append((String) o);
+				return;
+			}
+			if (!pretty) throw new JSONException("Bad value from toJSONString: " + o);
+		}
+		if (value instanceof Number) {
+			out.append(JSONObject.numberToString((Number) value));
+		} else if (value instanceof Boolean) {
+			out.append(value.toString());
+		} else if (value instanceof JSONObject) {
+			object(((JSONObject) value).map, indent);
+		} else if (value instanceof JSONArray) {
+			array(((JSONArray) value).getList(), indent);
+		} else if (value instanceof Map) {
+			object((Map) value, indent);
+		} else if (value instanceof Collection) {
+			array(value instanceof List ? (List) value : new ArrayList((Collection) value), indent);
+		} else if (value.getClass().isArray()) {
+			array(asList(value), indent);
+		} else if (value instanceof Date && !pretty) {
+			out.append("new Date(").append(String.valueOf(((Date) value).getTime())).append(')');
+		} else {
+			JSONObject.quote(value.toString(), out);
+		}
+	}
+
+	private void object(Map map, int indent) throws IOException, JSONException {
+		if (!pretty) {
+			out.append('{');
+			boolean first = true;
+			for (Iterator i = map.entrySet().iterator(); i.hasNext();) {
+				Map.Entry entry = (Map.Entry) i.next();
+				if (!first) {
+					out.append(',');
+				}
+				JSONObject.quote(entry.getKey().toString(), out);
+				out.append(':');
+				value(entry.getValue(), 0);
+				first = false;
+			}
+			out.append('}');
+			return;
+		}
+		int n = map.size();
+		if (n == 0) {
+			out.append("{}");
+			return;
+		}
+		out.append('{');
+		Iterator keys = new TreeSet(map.keySet()).iterator();
+		if (n == 1) {
+			Object key = keys.next();
+			JSONObject.quote(key.toString(), out);
+			out.append(": ");
+			value(map.get(key), indent);
+		} else {
+			int newindent = indent + indentFactor;
+			boolean first = true;
+			while (keys.hasNext()) {
+				Object key = keys.next();
+				out.append(first ? "\n" : ",\n");
+				indent(newindent);
+				JSONObject.quote(key.toString(), out);
+				out.append(": ");
+				value(map.get(key), newindent);
+				first = false;
+			}
+			out.append('\n');
+			indent(indent);
+		}
+		out.append('}');
+	}
+
+	private void array(List list, int indent) throws IOException, JSONException {
+		int len = list.size();
+		if (!pretty) {
+			out.append('[');
+			for (int i = 0; i < len; i++) {
+				if (i > 0) {
+					out.append(',');
+				}
+				value(list.get(i), 0);
+			}
+			out.append(']');
+			return;
+		}
+		if (len == 0) {
+			out.append("[]");
+			return;
+		}
+		out.append('[');
+		if (len == 1) {
+			value(list.get(0), indent);
+		} else {
+			int newindent = indent + indentFactor;
+			out.append('\n');
+			for (int i = 0; i < len; i++) {
+				if (i > 0) {
+					out.append(",\n");
+				}
+				indent(newindent);
+				value(list.get(i), newindent);
+			}
+			out.append('\n');
+			indent(indent);
+		}
+		out.append(']');
+	}
+
+	private void indent(int n) throws IOException {
+		for (int i = 0; i < n; i++) {
+			out.append(' ');
+		}
+	}
+
+	/**
+	 * A view of a Java array, primitive elements are boxed on access
+	 */
+	private static List asList(final Object array) {
+		return new AbstractList() {
+			public Object get(int index) {
+				return Array.get(array, index);
+			}
+
+			public int size() {
+				return Array.getLength(array);
+			}
+		};
+	}
+}
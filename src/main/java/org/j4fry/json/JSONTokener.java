@@ -3,7 +3,12 @@ package org.j4fry.json;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 
 /*
 Copyright (c) 2002 JSON.org
@@ -33,6 +38,9 @@ SOFTWARE.
  * A JSONTokener takes a source string and extracts characters and tokens from
  * it. It is used by the JSONObject and JSONArray constructors to parse
  * JSON source strings.
+ * Strings, CharSequences and char arrays are read through an index into the
+ * source instead of a Reader, runs of characters without escapes are copied
+ * at once.
  * @author JSON.org
  * @version 2008-09-18
  */
@@ -42,6 +50,8 @@ public class JSONTokener {
     private Reader reader;
     private char lastChar;
     private boolean useLastChar;
+    private CharSequence chars;
+    private int position;
 
 
     /**
@@ -63,7 +73,59 @@ public class JSONTokener {
      * @param s     A source string.
      */
     public JSONTokener(String s) {
-        this(new StringReader(s));
+        this((CharSequence) s);
+    }
+
+
+    /**
+     * Construct a JSONTokener that reads a CharSequence without a Reader.
+     *
+     * @param s     A source text.
+     */
+    public JSONTokener(CharSequence s) {
+        this.chars = s;
+        this.useLastChar = false;
+        this.index = 0;
+        this.position = 0;
+    }
+
+
+    /**
+     * Construct a JSONTokener that reads a char array without a Reader.
+     *
+     * @param s     A source text.
+     */
+    public JSONTokener(char[] s) {
+        this(CharBuffer.wrap(s));
+    }
+
+
+    /**
+     * Construct a JSONTokener over a memory-mapped file, e.g. to import a large
+     * JSON export without reading it through a Reader. ISO-8859-1 and US-ASCII
+     * files are read directly from the mapped bytes, files in other encodings are
+     * decoded into a CharBuffer at once.
+     *
+     * @param file     The JSON file.
+     * @param charset  The encoding of the file.
+     * @return A JSONTokener that reads the file's text.
+     * @throws IOException If the file cannot be mapped or decoded.
+     */
+    public static JSONTokener map(File file, Charset charset) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        ByteBuffer bytes;
+        try {
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel is closed
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+        String name = charset.name();
+        if ("ISO-8859-1".equals(name) || "US-ASCII".equals(name)) {
+            return new JSONTokener(new ByteSequence(bytes, 0, bytes.limit()));
+        }
+        return new JSONTokener(charset.newDecoder().decode(bytes));
     }
 
 
@@ -131,10 +193,14 @@ public class JSONTokener {
             return this.lastChar;
         } 
         int c;
-        try {
-            c = this.reader.read();
-        } catch (IOException exc) {
-            throw new JSONException(exc);
+        if (this.chars != null) {
+            c = this.position < this.chars.length() ? this.chars.charAt(this.position++) : -1;
+        } else {
+            try {
+                c = this.reader.read();
+            } catch (IOException exc) {
+                throw new JSONException(exc);
+            }
         }
 
         if (c <= 0) { // End of stream
@@ -187,13 +253,20 @@ public class JSONTokener {
              pos = 1;
          }
 
-         try {
-             int len;
-             while ((pos < n) && ((len = reader.read(buffer, pos, n - pos)) != -1)) {
-                 pos += len;
+         if (this.chars != null) {
+             int len = Math.min(n - pos, this.chars.length() - this.position);
+             for (int i = 0; i < len; i++) {
+                 buffer[pos++] = this.chars.charAt(this.position++);
+             }
+         } else {
+             try {
+                 int len;
+                 while ((pos < n) && ((len = reader.read(buffer, pos, n - pos)) != -1)) {
+                     pos += len;
+                 }
+             } catch (IOException exc) {
+                 throw new JSONException(exc);
              }
-         } catch (IOException exc) {
-             throw new JSONException(exc);
          }
          this.index += pos;
 
@@ -234,8 +307,40 @@ public class JSONTokener {
      */
     public String nextString(char quote) throws JSONException {
         char c;
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = null;
         for (;;) {
+            if (this.chars != null && !this.useLastChar) {
+                // copy the run up to the next quote, escape or line end at once
+                int start = this.position;
+                int end = start;
+                int length = this.chars.length();
+                while (end < length) {
+                    char ch = this.chars.charAt(end);
+                    if (ch == quote || ch == '\\' || ch == '\n' || ch == '\r' || ch == 0) {
+                        break;
+                    }
+                    end++;
+                }
+                if (sb == null && end < length && this.chars.charAt(end) == quote) {
+                    // no escapes, the string is a slice of the source
+                    this.index += end - start + 1;
+                    this.position = end + 1;
+                    this.lastChar = quote;
+                    return this.chars.subSequence(start, end).toString();
+                }
+                if (sb == null) {
+                    sb = new StringBuilder();
+                }
+                if (end > start) {
+                    sb.append(this.chars, start, end);
+                    this.index += end - start;
+                    this.position = end;
+                    this.lastChar = this.chars.charAt(end - 1);
+                }
+            }
+            if (sb == null) {
+                sb = new StringBuilder();
+            }
             c = next();
             switch (c) {
             case 0:
@@ -357,18 +462,28 @@ public class JSONTokener {
          * formatting character.
          */
 
-        StringBuffer sb = new StringBuffer();
+        s = nextUnquoted(c);
+        if (s.equals("")) {
+            throw syntaxError("Missing value");
+        }
+        return JSONObject.stringToValue(s);
+    }
+
+
+    /**
+     * Get unquoted text like true, a number or new Date(...), up to the next
+     * formatting character.
+     * @param c The first character of the text, it has already been read.
+     * @return The text, trimmed.
+     */
+    String nextUnquoted(char c) throws JSONException {
+        StringBuilder sb = new StringBuilder();
         while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
             sb.append(c);
             c = next();
         }
         back();
-
-        s = sb.toString().trim();
-        if (s.equals("")) {
-            throw syntaxError("Missing value");
-        }
-        return JSONObject.stringToValue(s);
+        return sb.toString().trim();
     }
 
 
@@ -381,6 +496,24 @@ public class JSONTokener {
      */
     public char skipTo(char to) throws JSONException {
         char c;
+        if (this.chars != null) {
+            int startIndex = this.index;
+            int startPosition = this.position;
+            boolean startUseLastChar = this.useLastChar;
+            char startLastChar = this.lastChar;
+            do {
+                c = next();
+                if (c == 0) {
+                    this.position = startPosition;
+                    this.index = startIndex;
+                    this.useLastChar = startUseLastChar;
+                    this.lastChar = startLastChar;
+                    return c;
+                }
+            } while (c != to);
+            back();
+            return c;
+        }
         try {
             int startIndex = this.index;
             reader.mark(Integer.MAX_VALUE);
@@ -419,4 +552,41 @@ public class JSONTokener {
     public String toString() {
         return " at character " + index;
     }
+
+
+    /**
+     * The text of single byte encoded bytes, the bytes are not copied
+     */
+    private static class ByteSequence implements CharSequence {
+
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
+
+        private ByteSequence(ByteBuffer bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            return (char) (bytes.get(offset + index) & 0xFF);
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            return new ByteSequence(bytes, offset + start, end - start);
+        }
+
+        public String toString() {
+            char[] text = new char[length];
+            for (int i = 0; i < length; i++) {
+                text[i] = charAt(i);
+            }
+            return new String(text);
+        }
+    }
 }
\ No newline at end of file
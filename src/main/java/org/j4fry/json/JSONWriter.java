@@ -208,7 +208,7 @@ public class JSONWriter {
                     this.writer.write(',');
                 }
                 stack[top - 1].putOnce(s, Boolean.TRUE);
-                this.writer.write(JSONObject.quote(s));
+                JSONObject.quote(s, this.writer);
                 this.writer.write(':');
                 this.comma = false;
                 this.mode = 'o';